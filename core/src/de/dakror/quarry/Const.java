@@ -65,6 +65,35 @@ public class Const {
 
     public static final int MIN_AUTOSAVE_INTERVAL = 3 * 60 * 1000; // 3 minutes
 
+    public static final int SIM_TICK_RATE = 60;
+    public static final double SIM_TICK_TIME = 1.0 / SIM_TICK_RATE;
+    public static final int SIM_MAX_CATCHUP_TICKS = 5;
+    public static final int SIM_MAX_STEP_SPEED = 8; // higher speeds are split into sub-steps
+    public static final double SIM_TURBO_BUDGET = 0.75; // share of a tick turbo sub-steps may use
+    public static final int TURBO_MAX_SPEED = 512;
+
+    public static final double SCHEDULER_FRAME_BUDGET = 2; // ms
+    public static final int SCHEDULER_WORKERS = 2;
+
+    public static final long OFFLINE_MIN_TIME = 60 * 1000; // 1 minute
+    public static final long OFFLINE_MAX_TIME = 24 * 60 * 60 * 1000; // 1 day
+    public static final int OFFLINE_SAMPLE_SPEED = SIM_MAX_STEP_SPEED;
+    public static final double OFFLINE_WARMUP_TIME = 20; // seconds of game time before sampling, belts and buffers refill
+    public static final double OFFLINE_SAMPLE_TIME = 30; // seconds of game time sampled at least
+    public static final double OFFLINE_MAX_SAMPLE_TIME = 240; // seconds of game time sampled at most
+    public static final int OFFLINE_SAMPLE_CYCLES = 2; // work cycles of the slowest producer the sample covers
+
+    public static final int TRANSPORT_LINE_MIN_LENGTH = 2; // conveyors
+    public static final int FLUID_NETWORK_MIN_SIZE = 2; // tubes
+    public static final int TIMER_WHEEL_BITS = 6; // slots per level as power of two
+    public static final int TIMER_WHEEL_LEVELS = 3;
+    public static final int CONVEYOR_WORKLIST_SIZE = 256;
+    public static final int CONVEYOR_WORKLIST_BUDGET = 1024; // conveyor updates per chunk and tick
+    public static final int ITEM_BATCH_SIZE = 4096; // sprites per draw call
+    public static final float CONVEYOR_STATS_INTERVAL = 1; // seconds of game time per sample
+    public static final int CONVEYOR_STATS_SAMPLES = 10;
+    public static final float CONVEYOR_STATS_FULL_RATE = 20; // items per second drawn fully opaque
+
     // BALANCING //
     public static final float ITEM_SPEED = 5000.0f;
     public static final int ITEMS_PER_CONVEYOR = 7;
@@ -74,6 +103,9 @@ public class Const {
     public static final int DEFAULT_PUMP_OUT_MAX_FLUID = 2000;
     public static final float DEFAULT_PUMP_OUT_DELAY = 2.0f;
 
+    public static final int SHAFT_FLUID_HANDOFF = 10_000;
+    public static final int ITEM_LIFT_BUFFER = 4;
+
     // UI //
     public static final int BUILD_RING_ITEM_SIZE = 100;
 
@@ -26,6 +26,8 @@ import com.badlogic.gdx.Application.ApplicationType;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.SkinLoader.SkinParameter;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap.Format;
@@ -34,6 +36,7 @@ import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.utils.I18NBundle;
+import com.badlogic.gdx.utils.ObjectMap;
 import com.github.czyzby.lml.parser.LmlParser;
 import com.github.czyzby.lml.parser.impl.DefaultLmlSyntax;
 import com.github.czyzby.lml.util.Lml;
@@ -178,6 +181,42 @@ public class Quarry extends GameBase implements PlatformInterface {
         addScene(s);
     }
 
+    /**
+     * Replaces {@link #create()} for headless runs. Loads the atlas and skin since
+     * schemas and items resolve their regions eagerly, but no sounds, fonts or fbos.
+     * Expects a GL stub to be installed by the launcher.
+     */
+    public void createHeadless() {
+        Q = this;
+        Game.HEADLESS = true;
+
+        prefs = Gdx.app.getPreferences("TheQuarry");
+        i18n = new I18NBundleDelegate(I18NBundle.createBundle(Gdx.files.internal("i18n/TheQuarry"), Locale.ENGLISH));
+
+        sound = new SoundManager(0, 0, 2.0f);
+        sound.setPlaySound(false);
+        sound.setPlayMusic(false);
+
+        assets = new AssetManager(new InternalFileHandleResolver());
+        assets.load("tex.atlas", TextureAtlas.class);
+
+        font = new BitmapFont();
+        ObjectMap<String, Object> fontMap = new ObjectMap<String, Object>();
+        fontMap.put("small-font", font);
+        fontMap.put("default-font", font);
+        fontMap.put("big-font", font);
+        assets.load("skin.json", Skin.class, new SkinParameter("tex.atlas", fontMap));
+
+        assets.finishLoading();
+
+        atlas = assets.get("tex.atlas");
+        skin = assets.get("skin.json");
+
+        // chunks only draw into these, so there is nothing to allocate
+        chunkFBOs = new FrameBuffer[(Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)
+                * (Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)];
+    }
+
     @Override
     public void pause() {
         // wait for saving to complete until pause is allowed
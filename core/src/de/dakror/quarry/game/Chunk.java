@@ -53,14 +53,20 @@ import de.dakror.quarry.game.Tile.TileType;
 import de.dakror.quarry.game.power.PowerNetwork;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Dock;
+import de.dakror.quarry.structure.base.FluidNetwork;
+import de.dakror.quarry.structure.base.FluidTubeStructure;
 import de.dakror.quarry.structure.base.StorageStructure;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.logistics.Conveyor;
+import de.dakror.quarry.structure.logistics.ConveyorStats;
+import de.dakror.quarry.structure.logistics.ConveyorWorklist;
+import de.dakror.quarry.structure.logistics.TransportLine;
 import de.dakror.quarry.structure.power.CopperCable;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.Bounds.Flags;
 import de.dakror.quarry.util.FBOable;
+import de.dakror.quarry.util.ItemBatch;
 import de.dakror.quarry.util.Savable;
 import de.dakror.quarry.util.SpriterDelegateBatch;
 
@@ -83,6 +89,7 @@ public class Chunk implements Disposable, FBOable, Savable {
     static final HashMap<TileType, HashMap<TileType, TextureRegion[]>> texLookup = new HashMap<>();
 
     final Object structLock = new Object();
+    final Object wakeLock = new Object();
 
     // lower byte data, upper byte meta
     short[] data;
@@ -97,14 +104,24 @@ public class Chunk implements Disposable, FBOable, Savable {
     Layer layer;
 
     public boolean dirty;
-    boolean dataSet, glSet;
+    volatile boolean dataSet;
+    boolean glSet;
 
     IntMap<Structure<?>> spatial;
     Array<Structure<?>> structures;
+    // structures with pending work, the others are dormant until something wakes them up
+    Array<Structure<?>> awake;
+    // woken up since the last update, guarded by wakeLock
+    final Array<Structure<?>> woken = new Array<>(false, 16, Structure.class);
     Array<Conveyor> conveyors;
+    Array<FluidTubeStructure> tubes;
+    final ConveyorWorklist worklist = new ConveyorWorklist(this);
+    final ConveyorStats conveyorStats = new ConveyorStats();
+    final TimerWheel timers = new TimerWheel(this);
     IntMap<CopperCable> cables;
 
     MeshBuilderDelegate builder;
+    ItemBatch itemBatch;
 
     FrameBuffer fbo;
 
@@ -122,7 +139,7 @@ public class Chunk implements Disposable, FBOable, Savable {
         dirty = true;
     }
 
-    public void init() {
+    public synchronized void init() {
         if (dataSet)
             return;
 
@@ -140,7 +157,9 @@ public class Chunk implements Disposable, FBOable, Savable {
 
         spatial = new IntMap<>();
         structures = new Array<>(false, 100, Structure.class);
+        awake = new Array<>(false, 100, Structure.class);
         conveyors = new Array<>(false, 100, Conveyor.class);
+        tubes = new Array<>(false, 100, FluidTubeStructure.class);
         cables = new IntMap<>(100);
 
         dataSet = true;
@@ -165,25 +184,47 @@ public class Chunk implements Disposable, FBOable, Savable {
         if (!dataSet) return;
 
         if (dirty && layer == Game.G.layer && Game.G.activeStructure != null) {
-            Game.G.camControl.updateTrail();
-            Game.G.camControl.updateActiveElementPlaceable();
+            Game.G.requestTrailUpdate();
         }
 
         boolean hasWidth = dirtyBounds.getWidth() > 0;
 
         synchronized (structLock) {
-            for (Structure<?> st : structures.items) {
-                if (st == null) break;
-                if (hasWidth || st.getSchema().type != StructureType.Conveyor)
+            // whatever asked to be woken up by now joins this update
+            timers.advance(layer.getTick());
+
+            // everything has to see changes to the world
+            if (hasWidth) wakeAll();
+            else drainWoken();
+
+            for (int i = 0; i < awake.size; i++) {
+                Structure<?> st = awake.get(i);
+                if (hasWidth || st.getSchema().type != StructureType.Conveyor) {
                     st.update(deltaTime, gameSpeed * st.getSpeedScale(), dirtyBounds);
+                    if (st instanceof Conveyor) worklist.addChain((Conveyor) st);
+                }
+            }
+
+            // conveyors and tubes know their neighbors now, straight runs and connected pipes can be merged
+            if (hasWidth && dirtyBounds.touches(ax - 1, ay - 1, Const.CHUNK_SIZE + 2, Const.CHUNK_SIZE + 2)) {
+                TransportLine.rebuild(conveyors, Game.TRANSPORT_LINES);
+                FluidNetwork.rebuild(tubes, Game.FLUID_NETWORKS);
             }
 
             // this update items has to happen after all updates because the normal updates will set item notifications
-            for (Conveyor st : conveyors.items) {
-                if (st == null) break;
-                st.updateItems(deltaTime, gameSpeed, true);
+            for (int i = 0; i < awake.size; i++) {
+                Structure<?> st = awake.get(i);
+                if (st instanceof Conveyor) {
+                    ((Conveyor) st).updateItems(deltaTime, gameSpeed, true);
+                    worklist.addChain((Conveyor) st);
+                }
             }
 
+            // back-pressure from items that left, breadth-first instead of recursing upstream
+            worklist.run();
+
+            conveyorStats.update(deltaTime, gameSpeed);
+
             if (dirtyBounds.hasFlag(Bounds.Flags.CABLE) || hasWidth) {
                 for (CopperCable c : cables.values()) {
                     c.update(deltaTime, gameSpeed, dirtyBounds);
@@ -196,18 +237,72 @@ public class Chunk implements Disposable, FBOable, Savable {
         if (!dataSet) return;
 
         synchronized (structLock) {
-            for (Structure<?> st : structures.items) {
-                if (st == null) break;
-                st.postUpdate(dirtyBounds);
+            drainWoken();
+
+            for (int i = 0; i < awake.size; i++) {
+                awake.get(i).postUpdate(dirtyBounds);
             }
 
             if (dirtyBounds.hasAnyFlag(Bounds.Flags.CABLE | Bounds.Flags.POWERNODE)) {
-                for (Structure<?> st : structures.items) {
-                    if (st == null) break;
-                    st.reloadPowerNetwork();
+                // networks span layers, which may be updating concurrently
+                synchronized (Game.G.powerGrid) {
+                    for (Structure<?> st : structures.items) {
+                        if (st == null) break;
+                        st.reloadPowerNetwork();
+                    }
                 }
             }
 
+            // retire everything without pending work, whatever gives them work wakes them up again
+            synchronized (wakeLock) {
+                for (int i = awake.size - 1; i >= 0; i--) {
+                    Structure<?> st = awake.get(i);
+                    if (!st.hasPendingWork()) {
+                        st.setDormant(true);
+                        awake.removeIndex(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Can be called from any thread, the structure rejoins the update at the start of the next chunk update.
+     */
+    public void wake(Structure<?> s) {
+        synchronized (wakeLock) {
+            if (s.isDormant()) {
+                s.setDormant(false);
+                woken.add(s);
+            }
+        }
+    }
+
+    /**
+     * Wakes the structure at the given layer tick, see {@link TimerWheel}.
+     */
+    public void schedule(Structure<?> s, long tick) {
+        timers.schedule(s, tick);
+    }
+
+    void drainWoken() {
+        synchronized (wakeLock) {
+            if (woken.size > 0) {
+                awake.addAll(woken);
+                woken.clear();
+            }
+        }
+    }
+
+    void wakeAll() {
+        synchronized (wakeLock) {
+            woken.clear();
+            awake.clear();
+            for (int i = 0; i < structures.size; i++) {
+                Structure<?> st = structures.get(i);
+                st.setDormant(false);
+                awake.add(st);
+            }
         }
     }
 
@@ -493,6 +588,24 @@ public class Chunk implements Disposable, FBOable, Savable {
             mesh.render(spriter.getShader(), GL20.GL_TRIANGLES);
     }
 
+    /**
+     * All items of the chunk in one go, straight from the item store.
+     * Has to be called between begin and end of the spriter, so its shader and the atlas are bound.
+     */
+    public void drawItems(DepthSpriter spriter) {
+        if (!dataSet) return;
+
+        if (itemBatch == null) itemBatch = new ItemBatch();
+
+        synchronized (structLock) {
+            itemBatch.begin(spriter.getShader());
+            for (int i = 0; i < conveyors.size; i++) {
+                conveyors.get(i).drawItems(itemBatch);
+            }
+            itemBatch.end();
+        }
+    }
+
     public void drawFrameStructures(DepthSpriter spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         if (!dataSet) return;
 
@@ -501,6 +614,7 @@ public class Chunk implements Disposable, FBOable, Savable {
                 if (st == null) break;
                 st.drawFrame(spriter, shaper, pfxBatch);
             }
+
             if (Game.DRAW_DEBUG) {
                 for (Entry<CopperCable> st : cables.entries()) {
                     st.value.drawFrame(spriter, shaper, pfxBatch);
@@ -509,6 +623,14 @@ public class Chunk implements Disposable, FBOable, Savable {
         }
     }
 
+    public void drawConveyorStats(ShapeRenderer shaper) {
+        if (!dataSet) return;
+
+        synchronized (structLock) {
+            conveyorStats.draw(shaper, conveyors);
+        }
+    }
+
     public Structure<?> getStructure(int x, int y) {
         if (!dataSet) return null;
 
@@ -550,6 +672,10 @@ public class Chunk implements Disposable, FBOable, Savable {
                         removeSpatial(q.x + i, q.y + j);
 
                 structures.removeValue(q, true);
+                synchronized (wakeLock) {
+                    awake.removeValue(q, true);
+                    woken.removeValue(q, true);
+                }
 
                 // recalc bound box
                 maxX = ax + Const.CHUNK_SIZE;
@@ -568,6 +694,8 @@ public class Chunk implements Disposable, FBOable, Savable {
                     layer.storages.removeValue((StorageStructure) q, true);
                 else if (q instanceof Conveyor)
                     conveyors.removeValue((Conveyor) q, true);
+                else if (q instanceof FluidTubeStructure)
+                    tubes.removeValue((FluidTubeStructure) q, true);
 
                 if (q.getSchema().powerDocks > 0) {
                     if (q.getPowerNetwork() != null)
@@ -640,6 +768,10 @@ public class Chunk implements Disposable, FBOable, Savable {
                 maxY = Math.max(maxY, s.y + s.getHeight());
 
                 structures.add(s);
+                synchronized (wakeLock) {
+                    s.setDormant(false);
+                    awake.add(s);
+                }
             }
 
             if (!(s instanceof CopperCable))
@@ -659,6 +791,8 @@ public class Chunk implements Disposable, FBOable, Savable {
                 layer.storages.add((StorageStructure) s);
             } else if (s instanceof Conveyor) {
                 conveyors.add((Conveyor) s);
+            } else if (s instanceof FluidTubeStructure) {
+                tubes.add((FluidTubeStructure) s);
             }
 
             if (s.getSchema().powerDocks > 0) {
@@ -673,6 +807,10 @@ public class Chunk implements Disposable, FBOable, Savable {
         return true;
     }
 
+    public ConveyorStats getConveyorStats() {
+        return conveyorStats;
+    }
+
     public IntMap<CopperCable> getCables() {
         return cables;
     }
@@ -681,6 +819,14 @@ public class Chunk implements Disposable, FBOable, Savable {
         return structures;
     }
 
+    public Array<Conveyor> getConveyors() {
+        return conveyors;
+    }
+
+    public int getAwakeCount() {
+        return awake == null ? 0 : awake.size;
+    }
+
     public int getItemCount() {
         synchronized (structLock) {
             int sum = 0;
@@ -705,6 +851,10 @@ public class Chunk implements Disposable, FBOable, Savable {
         if (builder != null && builder.getMesh() != null) {
             builder.dispose();
         }
+        if (itemBatch != null) {
+            itemBatch.dispose();
+            itemBatch = null;
+        }
         glSet = false;
         dirty = true;
     }
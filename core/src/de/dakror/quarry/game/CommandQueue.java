@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free queue for many producers and a single consumer. Producers only swap the tail,
+ * so offering never blocks, no matter what the consumer is doing.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class CommandQueue<T> {
+    static final class Node<T> {
+        volatile Node<T> next;
+        T value;
+    }
+
+    final AtomicReference<Node<T>> tail;
+
+    // consumer only
+    Node<T> head;
+
+    public CommandQueue() {
+        Node<T> stub = new Node<>();
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(T value) {
+        Node<T> n = new Node<>();
+        n.value = value;
+        Node<T> prev = tail.getAndSet(n);
+        // the queue is briefly cut here, poll sees the new node once this is linked
+        prev.next = n;
+    }
+
+    /**
+     * Must only be called by the consumer.
+     *
+     * @return the oldest value or null if there is none yet
+     */
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null) return null;
+
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * Must only be called by the consumer.
+     */
+    public void clear() {
+        while (poll() != null)
+            ;
+    }
+}
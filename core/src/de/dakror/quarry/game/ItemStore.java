@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.base.Structure;
+
+/**
+ * Item entities on the conveyors of a layer, stored as parallel primitive arrays
+ * and referred to by int handles. The arrays are split into fixed size pages,
+ * so growing never moves an item that another thread is working on.
+ * Fields of a handle are guarded by whoever holds it, only obtaining and freeing
+ * handles is synchronized.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class ItemStore {
+    public static final int NONE = -1;
+
+    static final int PAGE_BITS = 10;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    static final class Page {
+        final short[] item = new short[PAGE_SIZE];
+        final byte[] slot = new byte[PAGE_SIZE];
+        final byte[] lastSlot = new byte[PAGE_SIZE];
+        final byte[] dir = new byte[PAGE_SIZE];
+        final float[] interp = new float[PAGE_SIZE];
+        final float[] z = new float[PAGE_SIZE];
+        final Structure<?>[] src = new Structure<?>[PAGE_SIZE];
+    }
+
+    volatile Page[] pages = new Page[0];
+
+    // guarded by this
+    int size;
+    final IntArray free = new IntArray();
+
+    public synchronized int obtain() {
+        int h;
+        if (free.size > 0) {
+            h = free.pop();
+        } else {
+            h = size++;
+            if ((h >> PAGE_BITS) == pages.length) {
+                Page[] p = Arrays.copyOf(pages, pages.length + 1);
+                p[pages.length] = new Page();
+                pages = p;
+            }
+        }
+
+        Page p = pages[h >> PAGE_BITS];
+        int i = h & PAGE_MASK;
+        p.item[i] = 0;
+        p.slot[i] = 0;
+        p.lastSlot[i] = -1;
+        p.dir[i] = -1;
+        p.interp[i] = 0;
+        p.z[i] = Const.Z_ITEMS;
+        p.src[i] = null;
+        return h;
+    }
+
+    public synchronized void free(int h) {
+        Page p = pages[h >> PAGE_BITS];
+        p.item[h & PAGE_MASK] = 0;
+        p.src[h & PAGE_MASK] = null;
+        free.add(h);
+    }
+
+    public synchronized int getCount() {
+        return size - free.size;
+    }
+
+    /**
+     * @return null once the handle has been freed
+     */
+    public ItemType getItem(int h) {
+        return Item.get(pages[h >> PAGE_BITS].item[h & PAGE_MASK]);
+    }
+
+    public void setItem(int h, ItemType item) {
+        pages[h >> PAGE_BITS].item[h & PAGE_MASK] = item.value;
+    }
+
+    public int getSlot(int h) {
+        return pages[h >> PAGE_BITS].slot[h & PAGE_MASK];
+    }
+
+    public void setSlot(int h, int slot) {
+        pages[h >> PAGE_BITS].slot[h & PAGE_MASK] = (byte) slot;
+    }
+
+    public int getLastSlot(int h) {
+        return pages[h >> PAGE_BITS].lastSlot[h & PAGE_MASK];
+    }
+
+    public void setLastSlot(int h, int lastSlot) {
+        pages[h >> PAGE_BITS].lastSlot[h & PAGE_MASK] = (byte) lastSlot;
+    }
+
+    /**
+     * Moves the item to a new slot and remembers where it came from for drawing.
+     */
+    public void moveTo(int h, int slot) {
+        Page p = pages[h >> PAGE_BITS];
+        p.lastSlot[h & PAGE_MASK] = p.slot[h & PAGE_MASK];
+        p.slot[h & PAGE_MASK] = (byte) slot;
+    }
+
+    public Direction getDir(int h) {
+        int d = pages[h >> PAGE_BITS].dir[h & PAGE_MASK];
+        return d < 0 ? null : Direction.values[d];
+    }
+
+    public void setDir(int h, Direction dir) {
+        pages[h >> PAGE_BITS].dir[h & PAGE_MASK] = dir == null ? -1 : (byte) dir.ordinal();
+    }
+
+    public float getInterp(int h) {
+        return pages[h >> PAGE_BITS].interp[h & PAGE_MASK];
+    }
+
+    public void setInterp(int h, float interp) {
+        pages[h >> PAGE_BITS].interp[h & PAGE_MASK] = interp;
+    }
+
+    public void addInterp(int h, float delta) {
+        pages[h >> PAGE_BITS].interp[h & PAGE_MASK] += delta;
+    }
+
+    public float getZ(int h) {
+        return pages[h >> PAGE_BITS].z[h & PAGE_MASK];
+    }
+
+    public void setZ(int h, float z) {
+        pages[h >> PAGE_BITS].z[h & PAGE_MASK] = z;
+    }
+
+    public Structure<?> getSrc(int h) {
+        return pages[h >> PAGE_BITS].src[h & PAGE_MASK];
+    }
+
+    public void setSrc(int h, Structure<?> src) {
+        pages[h >> PAGE_BITS].src[h & PAGE_MASK] = src;
+    }
+
+    /**
+     * Same format the item entities used to be saved in.
+     */
+    public void save(int h, int x, int y, Builder b) {
+        Page p = pages[h >> PAGE_BITS];
+        int i = h & PAGE_MASK;
+
+        b
+                .Compound()
+                .Short("value", p.item[i])
+                .Int("x", x)
+                .Int("y", y)
+                .Int("slot", p.slot[i])
+                .Int("lastSlot", p.lastSlot[i])
+                .Double("interp", p.interp[i]);
+
+        if (p.z[i] != Const.Z_ITEMS)
+            b.Float("z", p.z[i]);
+
+        b.Byte("dir", p.dir[i]);
+
+        Structure<?> src = p.src[i];
+        if (src == null)
+            b.Int("src", -1);
+        else {
+            b
+                    .Int("src", src.x * src.layer.height + src.y)
+                    .Int("layer", src.layer.index);
+        }
+
+        b.End();
+    }
+
+    /**
+     * Needs all layers to be loaded, so the source can be looked up.
+     */
+    public int load(CompoundTag tag) throws NBTException {
+        short item = tag.Short("value");
+        int slot = tag.Int("slot");
+        int lastSlot = tag.Int("lastSlot", -1);
+        float z = tag.Float("z", Const.Z_ITEMS);
+
+        float interp;
+        try {
+            interp = (float) (tag.Double("interp") % 1.0);
+        } catch (NBTException e) {
+            interp = tag.Float("interp") % 1.0f;
+        }
+
+        byte dir = tag.Byte("dir");
+
+        Structure<?> src = null;
+        int srcIndex = tag.Int("src", -1);
+        if (srcIndex > -1) {
+            Layer l = Game.G.getLayer(tag.Int("layer", 0));
+            if (l != null)
+                src = l.getStructure(srcIndex);
+        }
+
+        int h = obtain();
+        Page p = pages[h >> PAGE_BITS];
+        int i = h & PAGE_MASK;
+        p.item[i] = item;
+        p.slot[i] = (byte) slot;
+        p.lastSlot[i] = (byte) lastSlot;
+        p.z[i] = z;
+        p.interp[i] = interp;
+        p.dir[i] = dir;
+        p.src[i] = src;
+        return h;
+    }
+}
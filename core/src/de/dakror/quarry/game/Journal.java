@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.common.libgdx.io.NBT;
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.CompressionType;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.common.libgdx.io.NBT.Tag;
+import de.dakror.common.libgdx.io.NBT.TagType;
+import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.power.CopperCable;
+import de.dakror.quarry.util.Logger;
+
+/**
+ * Stream of world mutations made by the player, stamped with the simulation tick
+ * they happened before. Recorded against a copy of the save it started from, so
+ * a session can be re-run deterministically, e.g. by the headless runner.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class Journal {
+    public enum CommandType {
+        Place,
+        Remove,
+        Rotate,
+        Paste,
+        Consume,
+        Speed;
+
+        public static final CommandType[] values = values();
+    }
+
+    public static class Command {
+        public final long tick;
+        public final CommandType type;
+        public final int layer;
+        public final int x, y;
+        public final int value;
+        public final int[] region;
+        public final CompoundTag data;
+
+        public Command(long tick, CommandType type, int layer, int x, int y, int value, int[] region, CompoundTag data) {
+            this.tick = tick;
+            this.type = type;
+            this.layer = layer;
+            this.x = x;
+            this.y = y;
+            this.value = value;
+            this.region = region;
+            this.data = data;
+        }
+    }
+
+    /** Copy region for structures recorded on their own, keeps absolute coordinates */
+    static final int[] ORIGIN = new int[4];
+
+    final String save;
+    final boolean replaying;
+    final Array<Command> commands;
+
+    long startTick;
+    int next;
+    int speed = -1;
+
+    Journal(String save, boolean replaying, Array<Command> commands) {
+        this.save = save;
+        this.replaying = replaying;
+        this.commands = commands;
+    }
+
+    public static FileHandle file(String fileName, boolean write) {
+        return Quarry.Q.file("TheQuarry/saves/" + fileName + ".qjf", write);
+    }
+
+    public static Journal record(String save, long startTick) {
+        Journal j = new Journal(save, false, new Array<Command>());
+        j.startTick = startTick;
+        return j;
+    }
+
+    public String getSave() {
+        return save;
+    }
+
+    public boolean isRecording() {
+        return !replaying;
+    }
+
+    public boolean isDone() {
+        return next >= commands.size;
+    }
+
+    public int size() {
+        return commands.size;
+    }
+
+    public long getLastTick() {
+        return commands.size == 0 ? 0 : commands.peek().tick;
+    }
+
+    /**
+     * Replay starts counting from the current simulation tick.
+     */
+    public void setStartTick(long startTick) {
+        this.startTick = startTick;
+    }
+
+    ///
+
+    void add(long tick, CommandType type, int layer, int x, int y, int value, int[] region, CompoundTag data) {
+        if (replaying) return;
+        commands.add(new Command(tick - startTick, type, layer, x, y, value, region, data));
+    }
+
+    public void place(long tick, Layer l, Structure<?> s) {
+        add(tick, CommandType.Place, l.getIndex(), s.x, s.y, 0, null, s.copy(ORIGIN));
+    }
+
+    public void remove(long tick, Layer l, Structure<?> s, boolean refund) {
+        add(tick, CommandType.Remove, l.getIndex(), s.x, s.y, (s instanceof CopperCable ? 1 : 0) | (refund ? 2 : 0), null, null);
+    }
+
+    public void rotate(long tick, Layer l, Structure<?> s, Direction d) {
+        add(tick, CommandType.Rotate, l.getIndex(), s.x, s.y, d.ordinal(), null, null);
+    }
+
+    public void paste(long tick, Layer l, Structure<?> s, int[] region, CompoundTag tag) {
+        add(tick, CommandType.Paste, l.getIndex(), s.x, s.y, s instanceof CopperCable ? 1 : 0, region.clone(), tag);
+    }
+
+    public void consume(long tick, ItemType item, int amount) {
+        add(tick, CommandType.Consume, 0, item.value, 0, amount, null, null);
+    }
+
+    /**
+     * Called by the simulation before every tick. Records speed changes while recording,
+     * applies all due commands while replaying.
+     *
+     * @return the game speed to run the tick with
+     */
+    public int onTick(long tick, int gameSpeed) {
+        if (!replaying) {
+            if (gameSpeed != speed) {
+                speed = gameSpeed;
+                add(tick, CommandType.Speed, 0, 0, 0, gameSpeed, null, null);
+            }
+            return gameSpeed;
+        }
+
+        long t = tick - startTick;
+        while (next < commands.size && commands.get(next).tick <= t) {
+            apply(commands.get(next++));
+        }
+
+        return speed == -1 ? gameSpeed : speed;
+    }
+
+    void apply(Command c) {
+        Game g = Game.G;
+        try {
+            switch (c.type) {
+                case Speed:
+                    speed = c.value;
+                    break;
+                case Consume:
+                    g.consumeResources(Item.get((short) c.x), c.value);
+                    break;
+                case Place: {
+                    Structure<?> s = Structure.loadPaste(ORIGIN, c.data);
+                    if (s != null && g.buildStructure(g.getLayer(c.layer), s)) {
+                        s.paste(ORIGIN, c.data);
+                    }
+                    break;
+                }
+                default: {
+                    Layer l = g.getLayer(c.layer);
+                    Structure<?> s = (c.value & 1) != 0 && c.type != CommandType.Rotate ? l.getCable(c.x, c.y) : l.getStructure(c.x, c.y);
+                    if (s == null) {
+                        Logger.error("Journal", c.type + " at " + c.x + ":" + c.y + " found nothing on tick " + c.tick);
+                        break;
+                    }
+
+                    if (c.type == CommandType.Remove) g.destroyStructure(l, s, (c.value & 2) != 0);
+                    else if (c.type == CommandType.Rotate) g.rotateStructure(l, s, Direction.values[c.value]);
+                    else g.pasteStructure(l, s, c.region, c.data);
+                    break;
+                }
+            }
+        } catch (NBTException e) {
+            Logger.error("Journal", "Failed to apply " + c.type + " on tick " + c.tick, e);
+        }
+    }
+
+    ///
+
+    public void save(FileHandle fh) throws IOException {
+        Builder b = new Builder("Journal")
+                .Int("build", Quarry.Q.versionNumber)
+                .String("save", save)
+                .List("Commands", TagType.Compound);
+
+        Array<CompoundTag> data = new Array<>();
+        for (Command c : commands) {
+            b.Compound()
+                    .Long("tick", c.tick)
+                    .Byte("type", (byte) c.type.ordinal())
+                    .Short("layer", (short) c.layer)
+                    .Int("x", c.x)
+                    .Int("y", c.y)
+                    .Int("value", c.value);
+            if (c.region != null)
+                b.IntArray("region", c.region);
+            if (c.data != null) {
+                b.Int("data", data.size);
+                data.add(c.data);
+            }
+            b.End();
+        }
+
+        b.End().List("Data", TagType.Compound);
+        for (CompoundTag t : data)
+            b.add(t);
+        b.End();
+
+        NBT.write(fh.write(false), b.Get(), CompressionType.Fast);
+    }
+
+    public static Journal load(FileHandle fh) throws IOException, NBTException {
+        CompoundTag tag = NBT.read(new BufferedInputStream(fh.read()), CompressionType.Fast);
+
+        Array<Tag> data = tag.List("Data", TagType.Compound).data;
+        Array<Command> commands = new Array<>();
+        for (Tag t : tag.List("Commands", TagType.Compound).data) {
+            CompoundTag c = (CompoundTag) t;
+            int d = c.Int("data", -1);
+            commands.add(new Command(c.Long("tick", 0), CommandType.values[c.Byte("type")], c.Short("layer"),
+                    c.Int("x"), c.Int("y"), c.Int("value"), c.has("region") ? c.IntArray("region") : null,
+                    d == -1 ? null : (CompoundTag) data.get(d)));
+        }
+
+        return new Journal(tag.String("save"), true, commands);
+    }
+}
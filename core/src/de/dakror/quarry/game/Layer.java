@@ -16,7 +16,14 @@
 
 package de.dakror.quarry.game;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
@@ -58,6 +65,7 @@ import de.dakror.quarry.structure.logistics.Hopper;
 import de.dakror.quarry.structure.power.CopperCable;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.Savable;
+import de.dakror.quarry.util.Scheduler.Priority;
 import de.dakror.quarry.util.SpriterDelegateBatch;
 
 /**
@@ -95,8 +103,9 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
     float lastLoudnessCalculation;
 
-    float[] loudness, initialLoudness, intermediateLoudness;
+    float[] loudness, nextLoudness, initialLoudness, intermediateLoudness;
     boolean updateLoudnessFlag;
+    volatile boolean loudnessPending;
     static float[] kernel;
     static int kernelSize = 4; // 2 * kernelSize + 1 = final size
     static float[] zeros;
@@ -113,6 +122,32 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     public final Bounds lastBounds = new Bounds();
     public final Bounds pendingBounds = new Bounds();
 
+    // items on the conveyors of this layer
+    public final ItemStore itemStore = new ItemStore();
+
+    // dirty region the current tick works on, see #update
+    final Bounds tickBounds = new Bounds();
+    // changes since the last frame, consumed by #draw
+    final Bounds drawBounds = new Bounds();
+    final Bounds frameBounds = new Bounds();
+
+    // structures exchanging items or fluids with other layers, applied at the tick barrier
+    final Array<Structure<?>> handoffs = new Array<>();
+
+    static final Comparator<Structure<?>> handoffOrder = new Comparator<Structure<?>>() {
+        @Override
+        public int compare(Structure<?> a, Structure<?> b) {
+            return Integer.compare(a.getIndex(), b.getIndex());
+        }
+    };
+
+    static final int CHUNK_PHASES = 9;
+    int[] phaseOrder;
+    int[] phaseStart;
+    ArrayList<Callable<Void>> phaseTasks;
+    double tickDelta;
+    int tickSpeed;
+
     public Layer(int index, int initialWidth, int initialHeight, TileType defaultTile, boolean initChunks, boolean initGL) {
         this.width = initialWidth;
         this.height = initialHeight;
@@ -177,10 +212,11 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
     public void updateLoudness(double deltaTime) {
         lastLoudnessCalculation -= deltaTime;
-        if (lastLoudnessCalculation <= 0 || updateLoudnessFlag) {
+        if ((lastLoudnessCalculation <= 0 || updateLoudnessFlag) && !loudnessPending) {
             synchronized (loudnessLock) {
                 if (loudness == null) {
                     loudness = new float[width * height];
+                    nextLoudness = new float[width * height];
                     intermediateLoudness = new float[width * height];
                     initialLoudness = new float[width * height];
                     if (zeros == null) {
@@ -206,60 +242,106 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
                     }
                 }
 
-                for (Chunk c : getChunks()) {
-                    if (c != null && c.isInit()) {
-                        for (Structure<?> s : c.getStructures()) {
-                            float l = s.getLoudness();
-                            for (int i = 0; i < s.getWidth(); i++) {
-                                for (int j = 0; j < s.getHeight(); j++) {
-                                    initialLoudness[(s.x + i) * height + (s.y + j)] = l;
-                                }
+                lastLoudnessCalculation = 1;
+                updateLoudnessFlag = false;
+            }
+
+            // sampling needs the world to hold still, so only the blur goes to the background
+            Arrays.fill(initialLoudness, 0);
+            for (Chunk c : getChunks()) {
+                if (c != null && c.isInit()) {
+                    for (Structure<?> s : c.getStructures()) {
+                        float l = s.getLoudness();
+                        for (int i = 0; i < s.getWidth(); i++) {
+                            for (int j = 0; j < s.getHeight(); j++) {
+                                initialLoudness[(s.x + i) * height + (s.y + j)] = l;
                             }
                         }
                     }
                 }
+            }
 
-                // column by column
-                for (int i = 0; i < width; i++) {
-                    for (int j = 0; j < height; j++) {
-                        float sum = 0;
-                        for (int k = -kernelSize; k <= kernelSize; k++) {
-                            if (j + k < 0 || j + k >= height) continue;
-                            sum += initialLoudness[i * height + j + k] * kernel[k + kernelSize];
-                        }
-                        intermediateLoudness[i * height + j] = sum;
+            loudnessPending = true;
+            Game.G.scheduler.submit(Priority.Low, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blurLoudness();
+                    } finally {
+                        loudnessPending = false;
                     }
                 }
+            }, null);
+        }
+    }
 
-                // row by row
-                for (int i = 0; i < height; i++) {
-                    for (int j = 0; j < width; j++) {
-                        float sum = 0;
-                        for (int k = -kernelSize; k <= kernelSize; k++) {
-                            if (j + k < 0 || j + k >= width) continue;
-                            sum += intermediateLoudness[(j + k) * height + i] * kernel[k + kernelSize];
-                        }
+    void blurLoudness() {
+        // column by column
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                float sum = 0;
+                for (int k = -kernelSize; k <= kernelSize; k++) {
+                    if (j + k < 0 || j + k >= height) continue;
+                    sum += initialLoudness[i * height + j + k] * kernel[k + kernelSize];
+                }
+                intermediateLoudness[i * height + j] = sum;
+            }
+        }
 
-                        // clamp down
-                        loudness[j * height + i] = Math.min(1, sum / Const.MAX_LOUDNESS);
-                    }
+        // row by row
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                float sum = 0;
+                for (int k = -kernelSize; k <= kernelSize; k++) {
+                    if (j + k < 0 || j + k >= width) continue;
+                    sum += intermediateLoudness[(j + k) * height + i] * kernel[k + kernelSize];
                 }
 
-                lastLoudnessCalculation = 1;
-                updateLoudnessFlag = false;
+                // clamp down
+                nextLoudness[j * height + i] = Math.min(1, sum / Const.MAX_LOUDNESS);
             }
         }
+
+        synchronized (loudnessLock) {
+            float[] l = loudness;
+            loudness = nextLoudness;
+            nextLoudness = l;
+        }
     }
 
     long timeSum = 0;
     long last = 0;
 
+    // game ticks since the layer was created or loaded, the clock of the timer wheels
+    volatile long tick;
+
     public void update(double deltaTime, int gameSpeed) {
+        tick += Math.round(deltaTime * gameSpeed * Const.SIM_TICK_RATE);
+
+        synchronized (chunkLock) {
+            // structures see the dirty region as of the start of the tick,
+            // anything marked dirty during the tick is picked up by the next one
+            tickBounds.set(dirtyBounds);
+            dirtyBounds.clear();
+        }
+
+        // not under chunkLock, chunk workers look up structures through it while we wait on them.
+        // the chunks themselves are guarded by their structLock
+        updateChunks(deltaTime, gameSpeed);
+
         synchronized (chunkLock) {
             for (Chunk c : chunks)
-                c.update(deltaTime, gameSpeed, dirtyBounds);
-            for (Chunk c : chunks)
-                c.postUpdate(dirtyBounds);
+                c.postUpdate(tickBounds);
+
+            if (!tickBounds.isEmpty() || fromLoading) {
+                synchronized (loudnessLock) {
+                    updateLoudnessFlag = true;
+                }
+
+                lastBounds.set(tickBounds);
+                drawBounds.add(tickBounds);
+                fromLoading = false;
+            }
         }
 
         synchronized (pfxLock) {
@@ -282,26 +364,103 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             }
         }
 
-        if (gameSpeed > 0 && Game.G.layer == this) {
+        if (gameSpeed > 0 && Game.G.layer == this && !Game.HEADLESS) {
             updateLoudness(deltaTime);
         }
     }
 
     /**
-     * Only called for non visible chunks
+     * Chunk workers queue handoffs at the same time, so this is synchronized.
      */
-    public void postUpdate() {
-        if (!dirtyBounds.isEmpty() || fromLoading) {
-            synchronized (loudnessLock) {
-                updateLoudnessFlag = true;
-            }
+    public synchronized void addHandoff(Structure<?> s) {
+        handoffs.add(s);
+    }
+
+    public synchronized void applyHandoffs() {
+        // queued in whatever order the workers got there, applied by position
+        handoffs.sort(handoffOrder);
+        for (int i = 0; i < handoffs.size; i++) {
+            Structure<?> s = handoffs.get(i);
+            // two workers may have queued the same structure at once
+            if (i > 0 && handoffs.get(i - 1) == s) continue;
+            s.applyHandoff();
+        }
+        handoffs.clear();
+    }
 
-            lastBounds.set(dirtyBounds);
+    void updateChunks(double deltaTime, int gameSpeed) {
+        if (phaseOrder == null) {
+            initPhases();
+        }
 
-            pendingBounds.add(dirtyBounds);
+        tickDelta = deltaTime;
+        tickSpeed = gameSpeed;
 
-            dirtyBounds.clear();
-            fromLoading = false;
+        ExecutorService workers = Game.PARALLEL_CHUNKS ? Game.G.simulation.getChunkWorkers() : null;
+
+        for (int p = 0; p < CHUNK_PHASES; p++) {
+            int start = phaseStart[p];
+            int end = phaseStart[p + 1];
+
+            if (workers == null || end - start < 2) {
+                for (int i = start; i < end; i++) {
+                    chunks[phaseOrder[i]].update(deltaTime, gameSpeed, tickBounds);
+                }
+            } else {
+                try {
+                    for (Future<Void> f : workers.invokeAll(phaseTasks.subList(start, end))) {
+                        f.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the chunks into a 3x3 pattern of update phases. During the phases structures only reach into directly
+     * adjacent chunks, so chunks of the same phase never touch each other's surroundings and can update in any order.
+     * Whatever reaches further is deferred: power offers are distributed by the network update at the start
+     * of the next tick, exchanges with other layers are applied at the tick barrier and electric conveyor cores
+     * walk their chains in {@link Chunk#postUpdate}, which runs for one chunk after the other.
+     */
+    void initPhases() {
+        int chunksW = chunks.length / chunksH;
+
+        phaseOrder = new int[chunks.length];
+        phaseStart = new int[CHUNK_PHASES + 1];
+        phaseTasks = new ArrayList<>(chunks.length);
+
+        int n = 0;
+        for (int p = 0; p < CHUNK_PHASES; p++) {
+            phaseStart[p] = n;
+            for (int cx = p % 3; cx < chunksW; cx += 3) {
+                for (int cy = p / 3; cy < chunksH; cy += 3) {
+                    final Chunk c = chunks[cx * chunksH + cy];
+                    phaseOrder[n++] = cx * chunksH + cy;
+                    phaseTasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            c.update(tickDelta, tickSpeed, tickBounds);
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        phaseStart[CHUNK_PHASES] = n;
+    }
+
+    /**
+     * Only called for non visible chunks
+     */
+    public void postUpdate() {
+        if (!tickBounds.isEmpty()) {
+            pendingBounds.add(tickBounds);
         }
     }
 
@@ -312,8 +471,11 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             initialized = true;
         }
         synchronized (chunkLock) {
+            frameBounds.set(drawBounds);
+            drawBounds.clear();
+
             for (Chunk c : chunks) {
-                if (c.isInBounds(cam, true) || dirtyBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
+                if (c.isInBounds(cam, true) || frameBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
                     c.draw(cam, fboCam, viewport, batch);
                 }
             }
@@ -338,20 +500,17 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
         synchronized (chunkLock) {
             for (Chunk c : chunks) {
-                if (c.isInBounds(cam, false) || dirtyBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
-                    c.drawStructures(spriter, dirtyBounds);
+                if (c.isInBounds(cam, false) || frameBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
+                    c.drawStructures(spriter, frameBounds);
                 }
             }
-        }
 
-        if (!dirtyBounds.isEmpty() || fromLoading) {
-            synchronized (loudnessLock) {
-                updateLoudnessFlag = true;
+            // items go through the same shader as the structure meshes, not the shape renderer of the frame pass
+            for (Chunk c : chunks) {
+                if (c.isInBounds(cam, false)) {
+                    c.drawItems(spriter);
+                }
             }
-
-            lastBounds.set(dirtyBounds);
-            dirtyBounds.clear();
-            fromLoading = false;
         }
 
         spriter.end();
@@ -395,6 +554,16 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             shaper.rect(lastBounds.getX() * Const.TILE_SIZE, lastBounds.getY() * Const.TILE_SIZE, lastBounds.getWidth() * Const.TILE_SIZE, lastBounds.getHeight() * Const.TILE_SIZE);
         }
 
+        if (Game.BELT_HEATMAP) {
+            synchronized (chunkLock) {
+                for (Chunk c : chunks) {
+                    if (c.isInBounds(cam, false)) {
+                        c.drawConveyorStats(shaper);
+                    }
+                }
+            }
+        }
+
         shaper.end();
         
         // Draw map boundary with white glow effect
@@ -445,28 +614,26 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             return null;
         }
-        synchronized (chunkLock) {
-            Chunk c = chunks[(x / Const.CHUNK_SIZE) * chunksH + y / Const.CHUNK_SIZE];
+        // the chunk array is fixed after construction and init is synchronized on the chunk,
+        // so lookups don't need chunkLock. Chunk workers do them while holding a structLock
+        Chunk c = chunks[(x / Const.CHUNK_SIZE) * chunksH + y / Const.CHUNK_SIZE];
 
-            if (c == null)
-                return null;
+        if (c == null)
+            return null;
 
-            if (!c.dataSet)
-                c.init();
+        if (!c.dataSet)
+            c.init();
 
-            return c;
-        }
+        return c;
     }
 
     public Structure<?> getStructure(int x, int y) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             return null;
         }
-        synchronized (chunkLock) {
-            Chunk c = getChunk(x, y);
-            if (c == null) return null;
-            return c.getStructure(x - c.ax, y - c.ay);
-        }
+        Chunk c = getChunk(x, y);
+        if (c == null) return null;
+        return c.getStructure(x - c.ax, y - c.ay);
     }
 
     public Structure<?> getStructure(int i) {
@@ -478,11 +645,9 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     }
 
     public CopperCable getCable(int x, int y) {
-        synchronized (chunkLock) {
-            Chunk c = getChunk(x, y);
-            if (c == null) return null;
-            return c.getCable(x - c.ax, y - c.ay);
-        }
+        Chunk c = getChunk(x, y);
+        if (c == null) return null;
+        return c.getCable(x - c.ax, y - c.ay);
     }
 
     public Structure<?> getAny(int i, boolean structuresFirst) {
@@ -913,6 +1078,10 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         Game.G.layerChangeNotifier.removeListener(this);
     }
 
+    public long getTick() {
+        return tick;
+    }
+
     public int getIndex() {
         return index;
     }
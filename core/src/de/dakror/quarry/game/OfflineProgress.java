@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.game.power.PowerNetwork;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.structure.base.ProducerStructure;
+import de.dakror.quarry.structure.base.RecipeList.Recipe;
+import de.dakror.quarry.structure.base.StorageStructure;
+import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureType;
+import de.dakror.quarry.structure.power.Substation;
+import de.dakror.quarry.util.Logger;
+
+/**
+ * Makes up for the time a save was closed without ticking through it.
+ * The world first runs for a while so belts and buffers fill up again after loading,
+ * then it is sampled for long enough to see the slowest running producer finish a few cycles,
+ * which gives the steady state rates at which stored resources and substation charge change.
+ * These are then extrapolated in one step. Extrapolation stops when the first resource that is
+ * being used up runs out, and storages and substations cap what they can take.
+ * Runs off the render thread and only holds the simulation lock tick by tick,
+ * the regular simulation may run in between and simply counts towards the sample.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class OfflineProgress {
+    static class NetworkCharge {
+        final Array<Substation> substations = new Array<>();
+        double level, capacity;
+    }
+
+    /**
+     * Must not be called with the simulation lock held, the layers have to be set.
+     *
+     * @return the amount of game time caught up in seconds
+     */
+    public static double catchUp(Game g, long elapsed) {
+        if (elapsed < Const.OFFLINE_MIN_TIME) return 0;
+
+        long t = System.currentTimeMillis();
+        Object lock = g.simulation.getLock();
+
+        Array<Layer> layers = new Array<>();
+        double window;
+        double start;
+        synchronized (lock) {
+            for (int i = 0; i < g.getLayerCount(); i++)
+                layers.add(g.getLayer(i));
+
+            window = sampleWindow(layers);
+            start = g.simulation.getTime();
+        }
+
+        if (!run(g, layers, start + Const.OFFLINE_WARMUP_TIME)) return 0;
+
+        EnumMap<ItemType, Integer> before;
+        ObjectMap<PowerNetwork, NetworkCharge> charge;
+        double sampleStart;
+        synchronized (lock) {
+            before = snapshotResources(g);
+            charge = snapshotCharge(layers);
+            sampleStart = g.simulation.getTime();
+        }
+
+        if (!run(g, layers, sampleStart + window)) return 0;
+
+        synchronized (lock) {
+            if (!isCurrent(g, layers)) return 0;
+
+            double now = g.simulation.getTime();
+            double sampled = now - sampleStart;
+            double ran = now - start;
+
+            double horizon = Math.min(elapsed, Const.OFFLINE_MAX_TIME) / 1000.0 - ran;
+            if (horizon <= 0) return ran;
+
+            EnumMap<ItemType, Integer> after = snapshotResources(g);
+            EnumMap<ItemType, Double> rates = new EnumMap<>(ItemType.class);
+            for (ItemType item : ItemType.values) {
+                Integer a = after.get(item), b = before.get(item);
+                int delta = (a == null ? 0 : a) - (b == null ? 0 : b);
+                if (delta == 0) continue;
+
+                double rate = delta / sampled;
+                rates.put(item, rate);
+
+                // production would stall once an input is used up, stop extrapolating there
+                if (rate < 0) {
+                    horizon = Math.min(horizon, (a == null ? 0 : a) / -rate);
+                }
+            }
+
+            for (Map.Entry<ItemType, Double> e : rates.entrySet()) {
+                int amount = (int) (e.getValue() * horizon);
+                if (amount > 0) {
+                    deposit(g, layers, e.getKey(), amount);
+                } else if (amount < 0) {
+                    g.removeResources(e.getKey(), -amount, true);
+                }
+            }
+
+            // networks that only formed while sampling have no rate to go by
+            ObjectMap<PowerNetwork, NetworkCharge> afterCharge = snapshotCharge(layers);
+            for (ObjectMap.Entry<PowerNetwork, NetworkCharge> e : afterCharge.entries()) {
+                NetworkCharge c = e.value;
+                NetworkCharge b = charge.get(e.key);
+                if (b == null || c.capacity == 0) continue;
+
+                double rate = (c.level - b.level) / sampled;
+                double fill = Math.max(0, Math.min(1, (c.level + rate * horizon) / c.capacity));
+                for (Substation s : c.substations)
+                    s.setPowerLevel(fill * s.getPowerCapacity());
+            }
+
+            Logger.info("OfflineProgress", "Caught up " + (int) (ran + horizon) + "s of " + elapsed / 1000 + "s offline, sampled "
+                    + (int) sampled + "s, in " + (System.currentTimeMillis() - t) + "ms");
+
+            return ran + horizon;
+        }
+    }
+
+    /**
+     * Ticks at {@link Const#OFFLINE_SAMPLE_SPEED} until the simulation reached the given game time,
+     * taking the lock for each tick only.
+     *
+     * @return false if the layers changed in the meantime, nothing to catch up then
+     */
+    static boolean run(Game g, Array<Layer> layers, double until) {
+        while (true) {
+            synchronized (g.simulation.getLock()) {
+                if (!isCurrent(g, layers)) return false;
+                if (g.simulation.getTime() >= until) return true;
+
+                g.simulation.tick(Const.SIM_TICK_TIME, Const.OFFLINE_SAMPLE_SPEED);
+            }
+        }
+    }
+
+    static boolean isCurrent(Game g, Array<Layer> layers) {
+        if (g.getLayerCount() != layers.size) return false;
+        for (int i = 0; i < layers.size; i++)
+            if (g.getLayer(i) != layers.get(i)) return false;
+        return true;
+    }
+
+    /**
+     * Long enough for the slowest running producer to finish a few cycles, so it doesn't read as standing still.
+     */
+    static double sampleWindow(Array<Layer> layers) {
+        double slowest = 0;
+        for (Layer l : layers) {
+            for (Chunk c : l.getChunks()) {
+                if (c == null || !c.isInit()) continue;
+                for (Structure<?> s : c.getStructures()) {
+                    if (!(s instanceof ProducerStructure)) continue;
+
+                    Recipe r = ((ProducerStructure) s).getActiveRecipe();
+                    if (r != null) slowest = Math.max(slowest, r.workingTime);
+                }
+            }
+        }
+
+        return Math.min(Const.OFFLINE_MAX_SAMPLE_TIME, Math.max(Const.OFFLINE_SAMPLE_TIME, slowest * Const.OFFLINE_SAMPLE_CYCLES));
+    }
+
+    static EnumMap<ItemType, Integer> snapshotResources(Game g) {
+        EnumMap<ItemType, Integer> res = new EnumMap<>(ItemType.class);
+        for (Map.Entry<ItemType, Integer> e : g.getAllResources())
+            res.put(e.getKey(), e.getValue());
+        return res;
+    }
+
+    static ObjectMap<PowerNetwork, NetworkCharge> snapshotCharge(Array<Layer> layers) {
+        ObjectMap<PowerNetwork, NetworkCharge> charge = new ObjectMap<>();
+        for (Layer l : layers) {
+            for (Chunk c : l.getChunks()) {
+                if (c == null || !c.isInit()) continue;
+                for (Structure<?> s : c.getStructures()) {
+                    if (!(s instanceof Substation) || s.getPowerNetwork() == null) continue;
+
+                    NetworkCharge n = charge.get(s.getPowerNetwork());
+                    if (n == null) {
+                        n = new NetworkCharge();
+                        charge.put(s.getPowerNetwork(), n);
+                    }
+                    n.substations.add((Substation) s);
+                    n.level += s.getPowerLevel();
+                    n.capacity += s.getPowerCapacity();
+                }
+            }
+        }
+        return charge;
+    }
+
+    /**
+     * Like {@link Game#addResources(ItemType, int, boolean)}, but fills any storage and silently drops what does not fit.
+     */
+    static void deposit(Game g, Array<Layer> layers, ItemType item, int amount) {
+        int remaining = amount;
+        o: for (Layer l : layers) {
+            for (StorageStructure s : l.storages) {
+                // skip empty barrels
+                if (s.getSchema().type == StructureType.Barrel && s.isEmpty())
+                    continue;
+
+                remaining = s.addToInventoryWithRest(item, remaining);
+                if (remaining == 0)
+                    break o;
+            }
+        }
+
+        if (amount - remaining > 0)
+            g.addResources(item, amount - remaining, false);
+    }
+}
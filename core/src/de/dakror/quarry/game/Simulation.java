@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.power.PowerGrid;
+import de.dakror.quarry.game.power.PowerNetwork;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.util.Logger;
+
+/**
+ * Runs the world simulation (power grid, layers, chunks) on its own thread
+ * at a fixed tick rate, independent of the render loop.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class Simulation implements Runnable {
+    /**
+     * What the simulation published after a tick: the tick number and which layers and power networks exist.
+     * Only the arrays are fixed, they hold the live objects the simulation keeps changing.
+     * So the renderer can look up which layers and networks there are without the simulation lock,
+     * but reading their contents needs the locks the simulation writes under:
+     * chunkLock for a layer's chunks, a chunk's structLock for its structures,
+     * a conveyor's itemLock or its transport line's monitor for items.
+     * Power networks only hand out their spanning tree for drawing, which is swapped in whole.
+     */
+    public static class Snapshot {
+        public final long tick;
+        public final Layer[] layers;
+        public final PowerNetwork[] networks;
+
+        Snapshot(long tick, Layer[] layers, PowerNetwork[] networks) {
+            this.tick = tick;
+            this.layers = layers;
+            this.networks = networks;
+        }
+    }
+
+    static final Layer[] NO_LAYERS = new Layer[0];
+    static final PowerNetwork[] NO_NETWORKS = new PowerNetwork[0];
+
+    final Object lock;
+    final PowerGrid powerGrid;
+
+    Array<Layer> layers;
+
+    Thread thread;
+    volatile boolean running;
+    volatile boolean suspended;
+
+    long tick;
+    // game time simulated so far in seconds, guarded by the lock
+    double time;
+
+    volatile float achievedSpeed;
+
+    volatile Snapshot snapshot = new Snapshot(0, NO_LAYERS, NO_NETWORKS);
+
+    volatile Journal journal;
+
+    // consumed by whoever holds the lock
+    final CommandQueue<Runnable> commands = new CommandQueue<>();
+
+    ExecutorService workers;
+    ExecutorService chunkWorkers;
+    final ArrayList<LayerTask> tasks = new ArrayList<>();
+
+    static class LayerTask implements Callable<Void> {
+        Layer layer;
+        double deltaTime;
+        int gameSpeed;
+        Layer visible;
+
+        @Override
+        public Void call() {
+            updateLayer(layer, deltaTime, gameSpeed, visible);
+            return null;
+        }
+    }
+
+    public Simulation(Object lock, PowerGrid powerGrid) {
+        this.lock = lock;
+        this.powerGrid = powerGrid;
+    }
+
+    public void setLayers(Array<Layer> layers) {
+        synchronized (lock) {
+            this.layers = layers;
+            publish();
+        }
+    }
+
+    /**
+     * Records player commands against tick numbers, or replays them when loaded from a file.
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Queues a world mutation from any thread, it is applied at the next tick boundary.
+     */
+    public void post(Runnable command) {
+        commands.offer(command);
+    }
+
+    /**
+     * Drops all queued mutations, needs the lock.
+     */
+    public void clearCommands() {
+        commands.clear();
+    }
+
+    public Object getLock() {
+        return lock;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long getTick() {
+        return snapshot.tick;
+    }
+
+    /**
+     * Game time in seconds simulated since the simulation was created, needs the lock.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Game speed the simulation actually kept up with, averaged over the last few ticks.
+     * Only differs from the requested speed in turbo mode.
+     */
+    public float getAchievedSpeed() {
+        return achievedSpeed;
+    }
+
+    public void start() {
+        if (thread != null) return;
+
+        running = true;
+        suspended = false;
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread == null) return;
+
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+
+        synchronized (this) {
+            if (chunkWorkers != null) {
+                chunkWorkers.shutdownNow();
+                chunkWorkers = null;
+            }
+        }
+    }
+
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        double accumulator = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += (now - last) / 1_000_000_000.0;
+            last = now;
+
+            if (suspended) {
+                accumulator = 0;
+            } else {
+                // drop the backlog instead of spiralling when a tick takes too long
+                if (accumulator > Const.SIM_MAX_CATCHUP_TICKS * Const.SIM_TICK_TIME) {
+                    accumulator = Const.SIM_MAX_CATCHUP_TICKS * Const.SIM_TICK_TIME;
+                }
+
+                while (running && accumulator >= Const.SIM_TICK_TIME) {
+                    step();
+                    accumulator -= Const.SIM_TICK_TIME;
+                }
+            }
+
+            long sleep = (long) ((Const.SIM_TICK_TIME - accumulator) * 1000);
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    void step() {
+        Game g = Game.G;
+        int gameSpeed = g.isPaused() ? 0 : g.getGameSpeed();
+        if (Game.SINGLE_FRAME) {
+            gameSpeed = g.getGameSpeed();
+            Game.SINGLE_FRAME = false;
+        }
+
+        try {
+            int achieved = advance(gameSpeed, Const.SIM_TICK_TIME * Const.SIM_TURBO_BUDGET);
+            achievedSpeed = gameSpeed == 0 ? 0 : achievedSpeed * 0.9f + achieved * 0.1f;
+        } catch (Exception e) {
+            Logger.error("Simulation", "Tick " + tick + " failed", e);
+        }
+    }
+
+    /**
+     * Advances the world by one tick of game time. Speeds above {@link Const#SIM_MAX_STEP_SPEED}
+     * are split into sub-steps of at most that speed, so conveyor interpolation and fluid delays never see
+     * more than they were made for. Sub-steps stop early once the budget is used up.
+     * Without {@link Game#TURBO} the speed is capped at {@link Const#SIM_MAX_STEP_SPEED} instead.
+     *
+     * @param budget wall time in seconds the sub-steps may take
+     * @return the game speed that was achieved
+     */
+    public int advance(int gameSpeed, double budget) {
+        if (!Game.TURBO) gameSpeed = Math.min(gameSpeed, Const.SIM_MAX_STEP_SPEED);
+
+        if (gameSpeed <= Const.SIM_MAX_STEP_SPEED) {
+            tick(Const.SIM_TICK_TIME, gameSpeed);
+            return gameSpeed;
+        }
+
+        int steps = (gameSpeed + Const.SIM_MAX_STEP_SPEED - 1) / Const.SIM_MAX_STEP_SPEED;
+        int speed = gameSpeed / steps;
+        // any speed can be set, the first sub-steps take one more each so none of it is lost
+        int faster = gameSpeed % steps;
+
+        long end = System.nanoTime() + (long) (budget * 1_000_000_000L);
+        int done = 0;
+        int achieved = 0;
+        while (done < steps) {
+            int s = done < faster ? speed + 1 : speed;
+            tick(Const.SIM_TICK_TIME, s);
+            achieved += s;
+            done++;
+
+            if (System.nanoTime() > end) break;
+        }
+
+        return achieved;
+    }
+
+    public void tick(double deltaTime, int gameSpeed) {
+        synchronized (lock) {
+            if (layers == null) return;
+
+            // queued mutations are recorded against this tick, a replay applies them before its update too
+            applyCommands();
+
+            Journal j = journal;
+            if (j != null) {
+                gameSpeed = j.onTick(tick, gameSpeed);
+            }
+
+            powerGrid.update(deltaTime, gameSpeed);
+
+            Layer visible = Game.G.layer;
+            if (Game.PARALLEL_LAYERS && layers.size > 1) {
+                updateParallel(deltaTime, gameSpeed, visible);
+            } else {
+                for (int i = 0; i < layers.size; i++) {
+                    updateLayer(layers.get(i), deltaTime, gameSpeed, visible);
+                }
+            }
+
+            // tick barrier: apply everything that crosses layer boundaries in a fixed order
+            for (int i = 0; i < layers.size; i++) {
+                layers.get(i).applyHandoffs();
+            }
+
+            tick++;
+            time += deltaTime * gameSpeed;
+            publish();
+        }
+    }
+
+    void applyCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (Exception e) {
+                Logger.error("Simulation", "Command failed on tick " + tick, e);
+            }
+        }
+
+        Game.G.flushResources();
+    }
+
+    static void updateLayer(Layer l, double deltaTime, int gameSpeed, Layer visible) {
+        l.update(deltaTime, gameSpeed);
+        if (l != visible) {
+            l.postUpdate();
+        }
+    }
+
+    void updateParallel(double deltaTime, int gameSpeed, Layer visible) {
+        if (workers == null) {
+            workers = newWorkerPool("Simulation-Layer-");
+        }
+
+        while (tasks.size() < layers.size) {
+            tasks.add(new LayerTask());
+        }
+
+        for (int i = 0; i < layers.size; i++) {
+            LayerTask t = tasks.get(i);
+            t.layer = layers.get(i);
+            t.deltaTime = deltaTime;
+            t.gameSpeed = gameSpeed;
+            t.visible = visible;
+        }
+
+        try {
+            for (Future<Void> f : workers.invokeAll(tasks.subList(0, layers.size))) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Separate pool for chunk phases, layer tasks block on these so they must not share a pool.
+     */
+    public synchronized ExecutorService getChunkWorkers() {
+        if (chunkWorkers == null) {
+            chunkWorkers = newWorkerPool("Simulation-Chunk-");
+        }
+        return chunkWorkers;
+    }
+
+    static ExecutorService newWorkerPool(final String name) {
+        return Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            int count;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + (count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    void publish() {
+        Snapshot s = snapshot;
+
+        Layer[] ls = s.layers;
+        if (layers == null) {
+            ls = NO_LAYERS;
+        } else if (!same(ls, layers)) {
+            ls = layers.toArray(Layer.class);
+        }
+
+        PowerNetwork[] ns = s.networks;
+        if (!same(ns, powerGrid.getNetworks())) {
+            ns = powerGrid.getNetworks().toArray(PowerNetwork.class);
+        }
+
+        snapshot = new Snapshot(tick, ls, ns);
+    }
+
+    static <T> boolean same(T[] published, Array<T> current) {
+        if (published.length != current.size) return false;
+        for (int i = 0; i < published.length; i++) {
+            if (published[i] != current.get(i)) return false;
+        }
+        return true;
+    }
+}
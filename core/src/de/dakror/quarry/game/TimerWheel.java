@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.structure.base.Structure;
+
+/**
+ * Wakes up dormant structures at the layer tick they asked for, so waiting out a delay
+ * doesn't need an update every tick. Hierarchical: the first level has a slot per tick,
+ * every further level a slot per full turn of the level below. Entries further out than
+ * a full turn of the last level are parked in its current slot and placed again when that
+ * comes around.
+ * One wheel per chunk. Structures schedule from their own update and from whatever hands
+ * them something, so scheduling is synchronized, which costs next to nothing uncontended.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class TimerWheel {
+    static final int BITS = Const.TIMER_WHEEL_BITS;
+    static final int SLOTS = 1 << BITS;
+    static final int MASK = SLOTS - 1;
+    static final int LEVELS = Const.TIMER_WHEEL_LEVELS;
+
+    static final class Slot {
+        Structure<?>[] items = new Structure<?>[4];
+        long[] due = new long[4];
+        int size;
+
+        void add(Structure<?> s, long tick) {
+            if (size == items.length) {
+                Structure<?>[] i = new Structure<?>[size * 2];
+                System.arraycopy(items, 0, i, 0, size);
+                items = i;
+                long[] d = new long[size * 2];
+                System.arraycopy(due, 0, d, 0, size);
+                due = d;
+            }
+            items[size] = s;
+            due[size] = tick;
+            size++;
+        }
+    }
+
+    final Chunk chunk;
+    // level * SLOTS + index, created on first use
+    final Slot[] slots = new Slot[LEVELS * SLOTS];
+    // reused while cascading, so entries can be placed back into the slot they came from
+    Slot spare = new Slot();
+
+    long now;
+    int count;
+
+    public TimerWheel(Chunk chunk) {
+        this.chunk = chunk;
+    }
+
+    /**
+     * Wakes the structure at the given tick, or on the next one if that has already passed.
+     * Waking a structure that is not dormant does nothing, so extra entries are harmless.
+     */
+    public synchronized void schedule(Structure<?> s, long tick) {
+        place(s, Math.max(tick, now + 1));
+        count++;
+    }
+
+    void place(Structure<?> s, long tick) {
+        int i;
+        if (tick <= now) {
+            // overdue while cascading, the level 0 slot of the current tick is drained right after
+            i = (int) (now & MASK);
+        } else {
+            // the lowest level whose current turn contains the tick
+            int level = 0;
+            while (level < LEVELS - 1 && (tick >> (BITS * (level + 1))) != (now >> (BITS * (level + 1))))
+                level++;
+
+            long t = tick;
+            int top = BITS * (LEVELS - 1);
+            if ((tick >> top) - (now >> top) > SLOTS) {
+                // out of reach, the current slot of the last level comes around again after a full turn
+                t = now;
+            }
+
+            i = level * SLOTS + (int) ((t >> (BITS * level)) & MASK);
+        }
+
+        Slot slot = slots[i];
+        if (slot == null) slots[i] = slot = new Slot();
+        slot.add(s, tick);
+    }
+
+    /**
+     * Moves up to the given tick, waking everything that came due on the way.
+     */
+    public synchronized void advance(long tick) {
+        if (count == 0) {
+            now = Math.max(now, tick);
+            return;
+        }
+
+        while (now < tick) {
+            now++;
+
+            // bring entries down a level once their turn begins
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((now & ((1L << (BITS * level)) - 1)) == 0)
+                    cascade(level * SLOTS + (int) ((now >> (BITS * level)) & MASK));
+            }
+
+            Slot slot = slots[(int) (now & MASK)];
+            if (slot == null || slot.size == 0) continue;
+
+            for (int j = 0; j < slot.size; j++) {
+                Structure<?> s = slot.items[j];
+                slot.items[j] = null;
+                count--;
+                fire(s, slot.due[j]);
+            }
+            slot.size = 0;
+
+            if (count == 0) {
+                now = tick;
+                return;
+            }
+        }
+    }
+
+    protected void fire(Structure<?> s, long due) {
+        if (!s.isDestroyed()) chunk.wake(s);
+    }
+
+    void cascade(int i) {
+        Slot slot = slots[i];
+        if (slot == null || slot.size == 0) return;
+
+        slots[i] = spare;
+        spare = slot;
+
+        for (int j = 0; j < slot.size; j++) {
+            place(slot.items[j], slot.due[j]);
+            slot.items[j] = null;
+        }
+        slot.size = 0;
+    }
+}
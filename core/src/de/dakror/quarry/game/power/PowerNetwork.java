@@ -1,17 +1,20 @@
 package de.dakror.quarry.game.power;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Set;
 import java.util.TreeSet;
 
 import com.badlogic.gdx.math.WindowedMean;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
 import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.IntSet;
 import com.badlogic.gdx.utils.OrderedSet;
 
+import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Dock;
 import de.dakror.quarry.structure.base.Dock.DockType;
 import de.dakror.quarry.structure.base.Structure;
@@ -19,6 +22,7 @@ import de.dakror.quarry.structure.power.CopperCable;
 import de.dakror.quarry.structure.power.PowerPole;
 import de.dakror.quarry.structure.power.PowerPoleGhost;
 import de.dakror.quarry.structure.power.Substation;
+import de.dakror.quarry.util.Scheduler.Priority;
 
 public class PowerNetwork {
     public static enum NetworkStrength {
@@ -39,9 +43,11 @@ public class PowerNetwork {
     private Set<Edge> edgeSet;
     private IntMap<Edge[]> edges;
 
-    // cached complete graph for fast lookup of connections. 
-    // recalculated when a high power member of this network is modified
-    private IntMap<IntMap<Boolean>> highPowerConnections;
+    // union-find over the high power vertices, joined by PowerPole edges.
+    // two vertices are connected at PowerPole strength if they have the same root.
+    // edges only ever get joined in, removing one rebuilds the components on the next lookup
+    private IntIntMap highPowerParents;
+    private boolean highPowerDirty;
 
     // structures with power storage
     private OrderedSet<Structure<?>> donorVertices;
@@ -52,10 +58,32 @@ public class PowerNetwork {
 
     private OrderedSet<Structure<?>> allVertices;
 
-    private int numLowReceiverSlices;
-    private int numHighReceiverSlices;
-
-    private boolean hadEdgeDeletion;
+    // the vertices as arrays for the distribution passes, rebuilt when they change
+    private boolean distributionDirty = true;
+    private Structure<?>[] receivers = new Structure<?>[0];
+    // receivers by priority, highest first
+    private Structure<?>[] receiversByPriority = new Structure<?>[0];
+    // donors by receiver priority, lowest first
+    private Structure<?>[] donorsByPriority = new Structure<?>[0];
+
+    // receivers by demand per priority slice, one per high power component and one for the low power (LOW_POWER).
+    // kept between ticks so sorting them again is nearly linear
+    private final IntMap<int[]> fillOrders = new IntMap<>();
+    private double[] fillKeys = new double[0];
+    private double[] demands = new double[0];
+    private double[] strengths = new double[0];
+    // high power component of each receiver for the current distribution, LOW_POWER or UNCONNECTED if there is none
+    private int[] receiverComponents = new int[0];
+
+    // ends of removed edges in the order they were removed, checked for a split on the next update.
+    // removing a vertex removes its edges, so its former neighbors end up next to each other
+    private final Array<Structure<?>> removedEdgeEnds = new Array<>();
+
+    // scratch for searching from both ends of a removed edge
+    private final IntArray queueA = new IntArray();
+    private final IntArray queueB = new IntArray();
+    private final IntSet visitedA = new IntSet();
+    private final IntSet visitedB = new IntSet();
 
     private final WindowedMean inTickMean = new WindowedMean(60);
     private final WindowedMean outTickMean = new WindowedMean(60);
@@ -65,14 +93,26 @@ public class PowerNetwork {
 
     double accumulatedOfferedPower;
 
+    // power offered while the layers update, distributed by #update in donor order,
+    // so the result doesn't depend on which chunk worker got to offer first
+    private final Array<Structure<?>> offerDonors = new Array<>();
+    private double[] offerAmounts = new double[16];
+    private long[] offerOrder = new long[16];
+    // the offers summed up per high power component of their donors, in the order the components first offered
+    private final IntArray offerComponents = new IntArray();
+    private double[] componentOffers = new double[16];
+    private final IntIntMap offerComponentIndex = new IntIntMap();
+
+    static final int LOW_POWER = -2;
+    static final int UNCONNECTED = -1;
+
     static int idCounter = 0;
 
     int id;
 
-    final IntSet dfsScratch = new IntSet();
-
-    Array<Edge> minimumSpanningTree = new Array<Edge>();
-    boolean minimumSpanningTreeDirty = true;
+    volatile Array<Edge> minimumSpanningTree = new Array<Edge>();
+    volatile boolean minimumSpanningTreeDirty = true;
+    volatile boolean minimumSpanningTreePending;
 
     public PowerNetwork(PowerGrid grid) {
         this.grid = grid;
@@ -84,7 +124,7 @@ public class PowerNetwork {
 
         neutralVertices = new OrderedSet<>();
         allVertices = new OrderedSet<>();
-        highPowerConnections = new IntMap<>();
+        highPowerParents = new IntIntMap();
 
         donorVertices = new OrderedSet<>();
         /*new Comparator<Structure<?>>() {
@@ -136,12 +176,6 @@ public class PowerNetwork {
 
         if (node.getReceiverPriority() > 0) {
             if (!receiverVertices.add(node)) return false;
-
-            if (node.getSchema().highPower)
-                numHighReceiverSlices += node.getReceiverPriority();
-
-            if (node.getSchema().lowPower)
-                numLowReceiverSlices += node.getReceiverPriority();
         }
 
         if (node.getDonorPriority() == 0 && node.getReceiverPriority() == 0) {
@@ -152,12 +186,13 @@ public class PowerNetwork {
             edges.put(node.getIndex(), new Edge[node.getSchema().powerDocks]);
         }
 
-        if (node.getSchema().highPower && !highPowerConnections.containsKey(node.getIndex())) {
-            highPowerConnections.put(node.getIndex(), new IntMap<Boolean>());
+        if (node.getSchema().highPower && !highPowerParents.containsKey(node.getIndex())) {
+            highPowerParents.put(node.getIndex(), node.getIndex());
         }
 
         node.setPowerNetwork(this);
         minimumSpanningTreeDirty = true;
+        distributionDirty = true;
         return true;
     }
 
@@ -190,13 +225,8 @@ public class PowerNetwork {
             edgesOfB[dockB] = e;
             edges.put(keyB, edgesOfB);
 
-            if (networkStrength == NetworkStrength.PowerPole) {
-                IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-                connectionsA.put(keyA, true);
-                IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-                connectionsB.put(keyB, true);
-
-                grid.clearHighPowerCache();
+            if (networkStrength == NetworkStrength.PowerPole && !highPowerDirty) {
+                union(keyA, keyB);
             }
 
             return e;
@@ -214,16 +244,11 @@ public class PowerNetwork {
         }
         if (node.getReceiverPriority() > 0) {
             if (!receiverVertices.remove(node)) return false;
-
-            if (node.getSchema().highPower)
-                numHighReceiverSlices += node.getReceiverPriority();
-
-            if (node.getSchema().lowPower)
-                numLowReceiverSlices += node.getReceiverPriority();
         }
         if (node.getDonorPriority() == 0 && node.getReceiverPriority() == 0) {
             if (!neutralVertices.remove(node)) return false;
         }
+        distributionDirty = true;
 
         Edge[] edgesToRemove = edges.get(node.getIndex());
 
@@ -235,134 +260,333 @@ public class PowerNetwork {
 
         edges.remove(node.getIndex());
 
+        if (node.getSchema().highPower) {
+            highPowerDirty = true;
+        }
+
         return true;
     }
 
-    public void offerPower(double deltaTime, int gameSpeed, double power, Structure<?> donor) {
-        if (donor.getSchema().highPower) {
-            // high power has to be distributed per building
-            // because its not known where it could go at what speed
-            double remainder = power;
+    /**
+     * Only queues the power, it reaches the receivers with the next {@link #update(double, int)}.
+     * Generators in different chunks and layers may offer at the same time, so this is synchronized.
+     */
+    public synchronized void offerPower(double deltaTime, int gameSpeed, double power, Structure<?> donor) {
+        int n = offerDonors.size;
+        if (n == offerAmounts.length) {
+            offerAmounts = Arrays.copyOf(offerAmounts, n * 2);
+            offerOrder = new long[n * 2];
+        }
+        offerAmounts[n] = power;
+        offerDonors.add(donor);
+    }
 
-            int donorPriority = donor.getDonorPriority();
+    private synchronized void distributeOfferedPower(double deltaTime, int gameSpeed) {
+        int n = offerDonors.size;
 
-            int receiverSlices = numHighReceiverSlices;
+        // by donor, then in the order a donor offered
+        for (int i = 0; i < n; i++) {
+            offerOrder[i] = ((long) offerDonors.get(i).getIndex() << 32) | i;
+        }
+        Arrays.sort(offerOrder, 0, n);
+
+        if (highPowerDirty) rebuildHighPowerComponents();
+
+        for (int k = 0; k < n; k++) {
+            int i = (int) offerOrder[k];
+            Structure<?> donor = offerDonors.get(i);
+            double power = offerAmounts[i];
+
+            if (donor.getSchema().highPower) {
+                // high power reaches every receiver of its component at PowerPole strength,
+                // so all donors of a component share one distribution. Donor priority is always 0 for generators
+                int component = componentOf(donor);
+                int g = offerComponentIndex.get(component, -1);
+                if (g < 0) {
+                    g = offerComponents.size;
+                    offerComponents.add(component);
+                    offerComponentIndex.put(component, g);
+                    if (g == componentOffers.length) componentOffers = Arrays.copyOf(componentOffers, g * 2);
+                    componentOffers[g] = 0;
+                }
+                componentOffers[g] += power;
+            } else {
+                // instead of distributing each offered amount individually,
+                // we collect it all. Donor priority is always 0 for generators
+                accumulatedOfferedPower += power;
+            }
+        }
 
-            for (int i = 0; i < 5; i++) {
-                if (remainder == 0) break;
-                for (Structure<?> n : receiverVertices) {
-                    if (donorPriority > 0 && (n.getDonorPriority() > donorPriority)) continue;
+        if (offerComponents.size > 0) {
+            for (int i = 0; i < receivers.length; i++)
+                receiverComponents[i] = receivers[i].getSchema().highPower ? componentOf(receivers[i]) : LOW_POWER;
 
-                    double piece = Math.min(remainder / receiverSlices * n.getReceiverPriority(), remainder);
+            for (int g = 0; g < offerComponents.size; g++) {
+                double power = componentOffers[g];
+                double remainder = fill(power, deltaTime, gameSpeed, offerComponents.get(g));
+                inTick += power - remainder;
+            }
 
-                    // lookup if high power connection exists     
-                    NetworkStrength strength = getConnectionNetworkStrength(donor, n);
-                    if (strength == null) continue;
+            offerComponents.clear();
+            offerComponentIndex.clear();
+        }
 
-                    double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
+        offerDonors.clear();
+    }
 
-                    double leftover = n.acceptPower(piece, networkStrength);
+    private int componentOf(Structure<?> s) {
+        return highPowerParents.containsKey(s.getIndex()) ? find(s.getIndex()) : UNCONNECTED;
+    }
 
-                    if (!(n instanceof Substation)) {
-                        outTick += piece - leftover;
-                    }
+    private synchronized void distributeOfferedLowPower(double deltaTime, int gameSpeed) {
+        double remainder = fill(accumulatedOfferedPower, deltaTime, gameSpeed, LOW_POWER);
 
-                    remainder = remainder - piece + leftover;
+        inTick += accumulatedOfferedPower - remainder;
 
-                    if (remainder == 0) break;
-                }
-            }
-            inTick += power - remainder;
-        } else {
-            // instead of distributing each offered amount individually,
-            // we collect it all. Donor priority is always 0 for generators
-            accumulatedOfferedPower += power;
-        }
+        // reset amount offered
+        accumulatedOfferedPower = remainder;
     }
 
-    private void distributeOfferedLowPower(double deltaTime, int gameSpeed) {
-        double networkStrength = NetworkStrength.CopperCable.maxPowerPerSecond * deltaTime * gameSpeed;
-        double remainder = accumulatedOfferedPower;
+    private synchronized void prepareDistribution() {
+        if (!distributionDirty) return;
 
-        int receiverSlices = numLowReceiverSlices;
+        receivers = receiverVertices.orderedItems().toArray(Structure.class);
+        receiversByPriority = receivers.clone();
+        Arrays.sort(receiversByPriority, new Comparator<Structure<?>>() {
+            @Override
+            public int compare(Structure<?> a, Structure<?> b) {
+                return b.getReceiverPriority() - a.getReceiverPriority();
+            }
+        });
 
-        for (int i = 0; i < 5; i++) {
-            if (remainder == 0) break;
-            for (Structure<?> n : receiverVertices) {
-                if (remainder == 0) break;
+        donorsByPriority = donorVertices.orderedItems().toArray(Structure.class);
+        Arrays.sort(donorsByPriority, new Comparator<Structure<?>>() {
+            @Override
+            public int compare(Structure<?> a, Structure<?> b) {
+                return a.getReceiverPriority() - b.getReceiverPriority();
+            }
+        });
 
-                double piece = Math.min(remainder / receiverSlices * n.getReceiverPriority(), remainder);
-                double leftover = n.acceptPower(piece, networkStrength);
+        int n = receivers.length;
+        fillOrders.clear();
+        fillKeys = new double[n];
+        demands = new double[n];
+        strengths = new double[n];
+        receiverComponents = new int[n];
 
-                if (!(n instanceof Substation)) {
-                    outTick += piece - leftover;
-                }
+        distributionDirty = false;
+    }
+
+    /**
+     * Water-filling: splits the power among the receivers by their priority, none getting more than it can take.
+     * Going through them by demand per priority slice, each one either gets filled up
+     * or, from the first one that can take more than its share on, everyone gets exactly their share.
+     * Power a receiver turns down goes to the ones after it.
+     * Runs once for the collected low power and once per high power component that offered,
+     * the receivers' components have to be set in {@link #receiverComponents} for the latter.
+     *
+     * @param component the high power component of the donors, {@link #LOW_POWER} for the collected low power
+     * @return what is left over
+     */
+    private double fill(double power, double deltaTime, int gameSpeed, int component) {
+        int n = receivers.length;
+        double slices = 0;
+
+        int[] fillOrder = fillOrders.get(component);
+        if (fillOrder == null) {
+            fillOrder = new int[n];
+            for (int i = 0; i < n; i++)
+                fillOrder[i] = i;
+            fillOrders.put(component, fillOrder);
+        }
+
+        for (int i = 0; i < n; i++) {
+            Structure<?> r = receivers[i];
+            NetworkStrength strength = NetworkStrength.CopperCable;
+            if (component != LOW_POWER && r.getSchema().highPower) {
+                // same as getConnectionNetworkStrength, with the components looked up once per tick
+                int rc = receiverComponents[i];
+                if (component == UNCONNECTED || rc == UNCONNECTED) strength = null;
+                else if (rc == component) strength = NetworkStrength.PowerPole;
+            }
 
-                remainder = remainder - piece + leftover;
-                //receiverSlices -= n.getReceiverPriority();
+            if (strength == null) {
+                fillKeys[i] = -1;
+                continue;
+            }
+
+            strengths[i] = strength.maxPowerPerSecond * deltaTime * gameSpeed;
+            demands[i] = Math.max(0, Math.min(r.getPowerCapacity() - r.getPowerLevel(), strengths[i] - r.getPowerReceivedThisTick()));
+            fillKeys[i] = demands[i] / r.getReceiverPriority();
+            slices += r.getReceiverPriority();
+        }
 
-                if (remainder == 0) break;
+        // insertion sort, the order of a component barely changes from tick to tick
+        for (int i = 1; i < n; i++) {
+            int o = fillOrder[i];
+            double key = fillKeys[o];
+            int j = i - 1;
+            while (j >= 0 && fillKeys[fillOrder[j]] > key) {
+                fillOrder[j + 1] = fillOrder[j];
+                j--;
             }
+            fillOrder[j + 1] = o;
         }
 
-        inTick += accumulatedOfferedPower - remainder;
+        double remainder = power;
+        for (int k = 0; k < n && remainder > 0; k++) {
+            int i = fillOrder[k];
+            if (fillKeys[i] < 0) continue;
 
-        // reset amount offered
-        accumulatedOfferedPower = remainder;
+            Structure<?> r = receivers[i];
+            int priority = r.getReceiverPriority();
+            double piece = Math.min(demands[i], remainder / slices * priority);
+            slices -= priority;
+            if (piece <= 0) continue;
+
+            double leftover = r.acceptPower(piece, strengths[i]);
+
+            if (!(r instanceof Substation)) {
+                outTick += piece - leftover;
+            }
+
+            remainder = remainder - piece + leftover;
+        }
+
+        return remainder;
     }
 
+    /**
+     * Goes through the receivers from the highest priority down. Each level first pulls from the donors below it,
+     * the lowest first, then the storages on the level even out among each other.
+     */
     private void distributeStoredPower(double deltaTime, int gameSpeed) {
-        for (Structure<?> r : receiverVertices) {
-            double delta = r.getPowerCapacity() - r.getPowerLevel();
+        int lowerEnd = donorsByPriority.length;
+        int levelEnd = donorsByPriority.length;
+
+        for (int from = 0, to = 0; from < receiversByPriority.length; from = to) {
+            int priority = receiversByPriority[from].getReceiverPriority();
+            while (to < receiversByPriority.length && receiversByPriority[to].getReceiverPriority() == priority)
+                to++;
+
+            // donors are sorted the other way, so the bounds only move down
+            while (levelEnd > 0 && donorsByPriority[levelEnd - 1].getReceiverPriority() > priority)
+                levelEnd--;
+            lowerEnd = Math.min(lowerEnd, levelEnd);
+            while (lowerEnd > 0 && donorsByPriority[lowerEnd - 1].getReceiverPriority() == priority)
+                lowerEnd--;
+
+            pullStoredPower(from, to, lowerEnd, deltaTime, gameSpeed);
+            balanceStoredPower(lowerEnd, levelEnd, deltaTime, gameSpeed);
+        }
+    }
 
-            if (delta > 0) {
-                double remainingRequest = delta;
+    /**
+     * Fills up the receivers in [from, to) from the donors in [0, donorEnd), moving on to the next donor once one is empty
+     * and to the next receiver once one is full, so every pair is looked at no more than once.
+     */
+    private void pullStoredPower(int from, int to, int donorEnd, double deltaTime, int gameSpeed) {
+        int d = 0;
+        for (int k = from; k < to && d < donorEnd; k++) {
+            Structure<?> r = receiversByPriority[k];
+            double remainingRequest = r.getPowerCapacity() - r.getPowerLevel();
+
+            // skip super small differences
+            while (remainingRequest >= 1 && d < donorEnd) {
+                Structure<?> donor = donorsByPriority[d];
+                if (donor.getPowerLevel() < 1) {
+                    d++;
+                    continue;
+                }
 
-                for (Structure<?> d : donorVertices) {
-                    if (remainingRequest == 0) break;
+                // lookup if high power connection exists
+                NetworkStrength strength = getConnectionNetworkStrength(donor, r);
+                if (strength == null) break;
 
-                    if (d == r) continue;
+                double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
 
-                    if (d.getReceiverPriority() > r.getReceiverPriority()
-                            || (d.getReceiverPriority() == r.getReceiverPriority()
-                                    && r.getPowerRatio() >= d.getPowerRatio())) {
-                        continue;
-                    }
+                double request = Math.min(remainingRequest, networkStrength);
+                double gotten = donor.requestPower(request, networkStrength);
+                if (gotten <= 0) {
+                    d++;
+                    continue;
+                }
 
-                    double request = remainingRequest;
+                double leftover = r.acceptPower(gotten, networkStrength);
 
-                    if (d.getReceiverPriority() == r.getReceiverPriority()) {
-                        request = Math.min((d.getPowerRatio() - r.getPowerRatio()) / 2 * r.getPowerCapacity(), request);
-                    }
+                // refund the leftover to the donor
+                donor.refundPower(leftover);
 
-                    // skip super small differences
-                    if (request < 1) continue;
+                if (!(r instanceof Substation)) {
+                    outTick += gotten - leftover;
+                }
 
-                    // lookup if high power connection exists
+                remainingRequest -= gotten - leftover;
 
-                    NetworkStrength strength = getConnectionNetworkStrength(d, r);
-                    if (strength == null) continue;
+                // took all it could this tick
+                if (leftover > 0) break;
+            }
+        }
+    }
 
-                    double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
+    /**
+     * Levels the storages in [from, to) of the donors to the same share of their capacity,
+     * moving power from the fullest to the emptiest side in one sweep.
+     */
+    private void balanceStoredPower(int from, int to, double deltaTime, int gameSpeed) {
+        if (to - from < 2) return;
 
-                    request = Math.min(request, networkStrength);
+        double level = 0, capacity = 0;
+        for (int i = from; i < to; i++) {
+            level += donorsByPriority[i].getPowerLevel();
+            capacity += donorsByPriority[i].getPowerCapacity();
+        }
+        if (capacity == 0) return;
+
+        double ratio = level / capacity;
+
+        int g = from, t = from;
+        while (true) {
+            // skip super small differences
+            while (g < to && donorsByPriority[g].getPowerLevel() - ratio * donorsByPriority[g].getPowerCapacity() < 1)
+                g++;
+            while (t < to && ratio * donorsByPriority[t].getPowerCapacity() - donorsByPriority[t].getPowerLevel() < 1)
+                t++;
+            if (g == to || t == to) break;
+
+            Structure<?> giver = donorsByPriority[g];
+            Structure<?> taker = donorsByPriority[t];
+
+            // lookup if high power connection exists
+            NetworkStrength strength = getConnectionNetworkStrength(giver, taker);
+            if (strength == null) {
+                t++;
+                continue;
+            }
 
-                    double gotten = d.requestPower(request, networkStrength);
+            double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
 
-                    if (gotten > 0) {
-                        double leftover = r.acceptPower(gotten, networkStrength);
+            double request = Math.min(giver.getPowerLevel() - ratio * giver.getPowerCapacity(),
+                    ratio * taker.getPowerCapacity() - taker.getPowerLevel());
+            request = Math.min(request, networkStrength);
 
-                        // refund the leftover to the donor
-                        d.refundPower(leftover);
+            double gotten = giver.requestPower(request, networkStrength);
+            if (gotten <= 0) {
+                g++;
+                continue;
+            }
 
-                        if (!(r instanceof Substation)) {
-                            outTick += gotten - leftover;
-                        }
+            double leftover = taker.acceptPower(gotten, networkStrength);
 
-                        remainingRequest -= gotten - leftover;
-                    }
-                }
+            // refund the leftover to the donor
+            giver.refundPower(leftover);
+
+            if (!(taker instanceof Substation)) {
+                outTick += gotten - leftover;
             }
+
+            // took all it could this tick
+            if (leftover > 0) t++;
         }
     }
 
@@ -370,15 +594,17 @@ public class PowerNetwork {
         if (isEmpty()) {
             grid.removeNetwork(this);
             return;
-        } else if (hadEdgeDeletion) {
+        } else if (removedEdgeEnds.size > 0) {
             manageConnectedness();
-            hadEdgeDeletion = false;
         }
 
         if (gameSpeed == 0) return;
 
         timeTickMean.addValue((float) deltaTime);
 
+        prepareDistribution();
+        if (offerDonors.size > 0)
+            distributeOfferedPower(deltaTime, gameSpeed);
         if (accumulatedOfferedPower > 0)
             distributeOfferedLowPower(deltaTime, gameSpeed);
         distributeStoredPower(deltaTime, gameSpeed);
@@ -393,92 +619,65 @@ public class PowerNetwork {
         if (!a.getSchema().highPower || !b.getSchema().highPower) {
             return NetworkStrength.CopperCable;
         } else {
-            IntMap<Boolean> connectionsA = highPowerConnections.get(a.getIndex());
+            if (highPowerDirty) {
+                rebuildHighPowerComponents();
+            }
 
             // might not actually be connectd
-            if (connectionsA == null) return null;
-
-            Boolean connectionA = connectionsA.get(b.getIndex());
+            if (!highPowerParents.containsKey(a.getIndex()) || !highPowerParents.containsKey(b.getIndex())) return null;
 
-            if (connectionA == null) {
-                // we dont know about the connection: search it
-                dfsScratch.clear();
-                return findConnection(a, b);
-            } else if (connectionA) {
-                // we know of a fast connection
+            if (find(a.getIndex()) == find(b.getIndex())) {
                 return NetworkStrength.PowerPole;
             } else {
-                // we know that no fast connection exists
                 return NetworkStrength.CopperCable;
             }
         }
     }
 
-    /**
-     * Recursively search for a connection between a and b
-     */
-    private NetworkStrength findConnection(Structure<?> a, Structure<?> b) {
-        int keyA = a.getIndex();
-        int keyB = b.getIndex();
-
-        dfsScratch.add(keyA);
-
-        IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-        Boolean connectionA = connectionsA.get(keyB);
-
-        if (connectionA == null) {
-            // go through directly connected neighbors, 
-            // maybe it's them or they already know about
-            // the transitive connection
-
-            // BFS first round for direct neighbors
-            for (Edge e : edges.get(keyA)) {
-                if (e != null && e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                    Structure<?> edgeB = e.getOther(a);
-
-                    // do not go backwards in the path
-                    if (dfsScratch.contains(edgeB.getIndex())) continue;
-
-                    if (edgeB.getIndex() == keyB) {
-                        // our direct neighbor is B
-                        connectionA = true;
-                        break;
-                    }
-                }
-            }
-
-            // go deeper if no direct neighbor
-            if (connectionA == null) {
-                for (Edge e : edges.get(keyA)) {
-                    if (e != null && e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                        Structure<?> edgeB = e.getOther(a);
+    private int find(int key) {
+        int parent = highPowerParents.get(key, key);
+        while (parent != key) {
+            // path halving, point to the grandparent on the way up
+            int grandparent = highPowerParents.get(parent, parent);
+            highPowerParents.put(key, grandparent);
+            key = grandparent;
+            parent = highPowerParents.get(key, key);
+        }
+        return key;
+    }
 
-                        // do not go backwards in the path
-                        if (dfsScratch.contains(edgeB.getIndex())) continue;
+    private void union(int keyA, int keyB) {
+        int rootA = find(keyA);
+        int rootB = find(keyB);
+        if (rootA != rootB) {
+            highPowerParents.put(rootB, rootA);
+        }
+    }
 
-                        connectionA = findConnection(edgeB, b) == NetworkStrength.PowerPole;
-                        if (connectionA != null) break;
-                    }
-                }
+    /**
+     * Starts over with every high power vertex on its own and joins the ones along all PowerPole edges.
+     */
+    private void rebuildHighPowerComponents() {
+        highPowerParents.clear();
+        // the roots change, the orders of the old components are no help anymore
+        fillOrders.clear();
+        for (Structure<?> s : allVertices) {
+            if (s.getSchema().highPower) {
+                highPowerParents.put(s.getIndex(), s.getIndex());
             }
+        }
 
-            // if we could not find a path, there is none.
-            if (connectionA == null) {
-                connectionA = false;
+        for (Edge e : edgeSet) {
+            if (e.getNetworkStrength() == NetworkStrength.PowerPole) {
+                union(e.getA().getIndex(), e.getB().getIndex());
             }
-
-            // store information
-            connectionsA.put(keyB, connectionA);
-            IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-            connectionsB.put(keyA, connectionA);
         }
 
-        return connectionA ? NetworkStrength.PowerPole : NetworkStrength.CopperCable;
+        highPowerDirty = false;
     }
 
     public void clearHighPowerCache() {
-        for (IntMap<Boolean> set : highPowerConnections.values())
-            if (set != null) set.clear();
+        highPowerDirty = true;
     }
 
     public boolean isEmpty() {
@@ -490,59 +689,126 @@ public class PowerNetwork {
     }
 
     private void manageConnectedness() {
-        // split off potential other network
+        // split off potential other networks. every part the removed edges cut off contains one of their ends,
+        // so it is enough to check that the ends still in this network are connected to each other.
+        // each one is checked against the one before, usually a neighbor, and the searches stop once they meet.
+        // removed vertices and ends that moved away with a part that was split off are skipped,
+        // a part that is split off is always complete
+        Structure<?> prev = null;
+        for (int i = 0; i < removedEdgeEnds.size; i++) {
+            Structure<?> s = removedEdgeEnds.get(i);
+            if (s == prev || !hasVertex(s)) continue;
+
+            if (prev == null || !hasVertex(prev)) {
+                prev = s;
+                continue;
+            }
 
-        // gather connected component
-        IntSet set = new IntSet();
-        LinkedList<Integer> queue = new LinkedList<>();
-        queue.add(edges.iterator().next().key);
+            IntArray side = findSmallerSide(prev.getIndex(), s.getIndex());
+            if (side != null) {
+                splitOff(side, side == queueA ? prev : s);
+            }
 
-        while (!queue.isEmpty()) {
-            int n = queue.pop();
-            Edge[] myEdges = edges.get(n);
+            // all ends checked so far that are still here are connected to the one kept
+            if (side != queueB) prev = s;
+        }
 
-            if (myEdges == null) continue; // what???
-            set.add(n);
+        removedEdgeEnds.clear();
+    }
 
-            for (Edge e : myEdges) {
-                if (e == null) continue;
+    /**
+     * Searches from both ends of a removed edge at the same pace, one vertex each in turn.
+     * As soon as one search runs into the other, the ends are still connected.
+     * Otherwise the search that runs out first has found the smaller side, without walking the bigger one.
+     *
+     * @return the vertices of the smaller side, or null if the ends are still connected
+     */
+    private IntArray findSmallerSide(int keyA, int keyB) {
+        queueA.clear();
+        queueB.clear();
+        visitedA.clear();
+        visitedB.clear();
+
+        queueA.add(keyA);
+        visitedA.add(keyA);
+        queueB.add(keyB);
+        visitedB.add(keyB);
+
+        int headA = 0, headB = 0;
+        while (true) {
+            if (headA == queueA.size) return queueA;
+            if (visit(queueA.get(headA++), queueA, visitedA, visitedB)) return null;
+
+            if (headB == queueB.size) return queueB;
+            if (visit(queueB.get(headB++), queueB, visitedB, visitedA)) return null;
+        }
+    }
 
-                if (e.getA().getIndex() == n && !set.contains(e.getB().getIndex())) {
-                    queue.add(e.getB().getIndex());
-                } else if (e.getB().getIndex() == n && !set.contains(e.getA().getIndex())) {
-                    queue.add(e.getA().getIndex());
-                }
+    /**
+     * Queues the neighbors of a vertex not visited yet.
+     *
+     * @return whether one of them was visited by the other search
+     */
+    private boolean visit(int n, IntArray queue, IntSet visited, IntSet other) {
+        Edge[] myEdges = edges.get(n);
+        if (myEdges == null) return false;
+
+        for (Edge e : myEdges) {
+            if (e == null) continue;
+
+            int o = e.getA().getIndex() == n ? e.getB().getIndex() : e.getA().getIndex();
+            if (other.contains(o)) return true;
+
+            if (!visited.contains(o)) {
+                visited.add(o);
+                queue.add(o);
             }
         }
 
-        // disjunction, split off other part that is not connected to the found set
-        if (set.size < edges.size) {
-            PowerNetwork net = new PowerNetwork(grid);
+        return false;
+    }
+
+    /**
+     * Moves the vertices found by a search, and their edges, into a new network.
+     *
+     * @param end the end of the removed edge the search started from
+     */
+    private void splitOff(IntArray side, Structure<?> end) {
+        PowerNetwork net = new PowerNetwork(grid);
 
-            Set<Structure<?>> verticesToRemove = new HashSet<>();
+        Array<Structure<?>> verticesToRemove = new Array<>(side.size);
 
-            for (IntMap.Entry<Edge[]> o : edges.entries()) {
-                // this vertex is not in the connected component
-                if (!set.contains(o.key)) {
-                    // migrate edges
-                    for (Edge e : o.value) {
-                        if (e == null) continue;
+        for (int i = 0; i < side.size; i++) {
+            int key = side.get(i);
+            Edge[] myEdges = edges.get(key);
 
-                        verticesToRemove.add(e.getA());
-                        verticesToRemove.add(e.getB());
-                        net.addEdge(e);
-                    }
+            Structure<?> vertex = null;
+            if (myEdges != null) {
+                // migrate edges
+                for (Edge e : myEdges) {
+                    if (e == null) continue;
+
+                    vertex = e.getA().getIndex() == key ? e.getA() : e.getB();
+                    net.addEdge(e);
                 }
             }
 
-            // remove vertices from this network
-            // separate call to not get any concurrent modification in the first loop
-            for (Structure<?> s : verticesToRemove) {
-                removeVertex(s, false);
+            // only the end can be left without any edges
+            if (vertex == null) {
+                vertex = end;
+                net.addVertex(end);
             }
 
-            grid.addNetwork(net);
+            verticesToRemove.add(vertex);
         }
+
+        // remove vertices from this network
+        // separate call to not get any concurrent modification in the first loop
+        for (Structure<?> s : verticesToRemove) {
+            removeVertex(s, false);
+        }
+
+        grid.addNetwork(net);
     }
 
     private void connect(Edge existingEdge, Structure<?> node, int nodeDockIndex,
@@ -557,11 +823,13 @@ public class PowerNetwork {
             existingEdge.setDockA(nodeDockIndex);
             existingEdge.setDockB(targetDockIndex);
             addVertex(target);
+            if (networkStrength == NetworkStrength.PowerPole) highPowerDirty = true;
         } else if (existingEdge.getB() == node && target != existingEdge.getA()) {
             existingEdge.setA(target);
             existingEdge.setDockA(targetDockIndex);
             existingEdge.setDockB(nodeDockIndex);
             addVertex(target);
+            if (networkStrength == NetworkStrength.PowerPole) highPowerDirty = true;
         }
     }
 
@@ -672,12 +940,7 @@ public class PowerNetwork {
             edges.put(keyB, edgesOfB);
 
             if (e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-                connectionsA.remove(keyB);
-                IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-                connectionsB.remove(keyA);
-
-                grid.clearHighPowerCache();
+                highPowerDirty = true;
             }
 
             if (createIslandNetworks) {
@@ -696,7 +959,8 @@ public class PowerNetwork {
                 }
             }
 
-            hadEdgeDeletion = true;
+            removedEdgeEnds.add(e.getA());
+            removedEdgeEnds.add(e.getB());
             minimumSpanningTreeDirty = true;
 
             return true;
@@ -717,7 +981,7 @@ public class PowerNetwork {
         return outTickMean.getMean() / timeTickMean.getMean();
     }
 
-    public void addOutTick(double amount) {
+    public synchronized void addOutTick(double amount) {
         outTick += amount;
     }
 
@@ -735,11 +999,36 @@ public class PowerNetwork {
         return true;
     }
 
+    /**
+     * Returns the last built tree right away and rebuilds it in the background if it is outdated.
+     * For drawing, where a tree that is a few frames old does not matter.
+     */
+    public Array<Edge> getMinimumSpanningTreeLazy() {
+        if (minimumSpanningTreeDirty && !minimumSpanningTreePending) {
+            minimumSpanningTreePending = true;
+            Game.G.scheduler.submit(Priority.Low, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (Game.G.simulation.getLock()) {
+                            getMinimumSpanningTree();
+                        }
+                    } finally {
+                        minimumSpanningTreePending = false;
+                    }
+                }
+            }, null);
+        }
+        return minimumSpanningTree;
+    }
+
     public Array<Edge> getMinimumSpanningTree() {
         if (minimumSpanningTreeDirty) {
-            minimumSpanningTree.clear();
+            // built into a new array, the old one may still be drawn
+            Array<Edge> minimumSpanningTree = new Array<>();
 
             if (allVertices.isEmpty()) {
+                this.minimumSpanningTree = minimumSpanningTree;
                 minimumSpanningTreeDirty = false;
                 return minimumSpanningTree;
             }
@@ -788,6 +1077,7 @@ public class PowerNetwork {
                 }
             }
 
+            this.minimumSpanningTree = minimumSpanningTree;
             minimumSpanningTreeDirty = false;
         }
         return minimumSpanningTree;
@@ -32,6 +32,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.regex.Pattern;
 
 import com.badlogic.gdx.Application.ApplicationType;
@@ -108,10 +109,13 @@ import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
 import de.dakror.quarry.game.Item.Items.Amount;
+import de.dakror.quarry.game.Journal;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.game.LoadingCompat;
+import de.dakror.quarry.game.OfflineProgress;
 import de.dakror.quarry.game.Science;
 import de.dakror.quarry.game.Science.ScienceType;
+import de.dakror.quarry.game.Simulation;
 import de.dakror.quarry.game.Tile.TileMeta;
 import de.dakror.quarry.game.Tile.TileType;
 import de.dakror.quarry.game.power.Edge;
@@ -164,6 +168,8 @@ import de.dakror.quarry.structure.storage.Storage;
 import de.dakror.quarry.structure.storage.Tank;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.QuarrySoundPlayer;
+import de.dakror.quarry.util.Scheduler;
+import de.dakror.quarry.util.Scheduler.Priority;
 import de.dakror.quarry.util.SpriterDelegateBatch;
 import de.dakror.quarry.util.StructureSoundSpatializer;
 import de.dakror.quarry.util.Util;
@@ -199,38 +205,11 @@ public class Game extends GameScene {
         }
 
         public void deleteStructure(Structure<?> s) {
-            if (s instanceof CopperCable) {
-                layer.removeCable((CopperCable) s);
-            } else {
-                layer.removeStructure(s);
-            }
-
-            // remove attached hoppers
-            int removedHoppers = layer.removeAttachedHoppers(s);
+            destroyStructure(layer, s, true);
 
             if (Quarry.Q.sound.isPlaySound()) {
                 destroySfx.play(Quarry.Q.sound.getSoundVolume(), (float) (Math.random() * 0.2 + 0.8), 0);
             }
-
-            Items costs = s.getSchema().buildCosts;
-            for (Amount e : costs.entries) {
-                if (e.getAmount() > 1)
-                    addResources(e.getItem(), (int) Math.ceil(e.getAmount()
-                            * (hasScience(ScienceType.ConsiderateConstruction) ? Const.REFUND_CONSIDERATE_PERCENTAGE
-                                    : Const.REFUND_PERCENTAGE)),
-                            true);
-            }
-
-            // refund hoppers
-
-            costs = Hopper.classSchema.buildCosts;
-            for (Amount e : costs.entries) {
-                if (e.getAmount() > 1)
-                    addResources(e.getItem(), (int) Math.ceil(e.getAmount() * removedHoppers
-                            * (hasScience(ScienceType.ConsiderateConstruction) ? Const.REFUND_CONSIDERATE_PERCENTAGE
-                                    : Const.REFUND_PERCENTAGE)),
-                            true);
-            }
         }
 
         @Override
@@ -322,7 +301,7 @@ public class Game extends GameScene {
             if (copyMode && activeEnd == 0) {
                 if ((isInEndMarkerHitbox(x, y, true) || isInEndMarkerHitbox(x, y, false)) && endB.x > -1
                         && ui.canAffordStructure) {
-                    removeResources(ItemType.Blueprint, copyCost.get(ItemType.Blueprint), true);
+                    consumeResources(ItemType.Blueprint, copyCost.get(ItemType.Blueprint));
 
                     copyStructures.clear();
                     copyCables.clear();
@@ -1219,13 +1198,13 @@ public class Game extends GameScene {
                         int dy = first % layer.height - (int) endA.y;
 
                         if (dx == -1)
-                            ((IRotatable) s).setRotation(Direction.West);
+                            rotateStructure(layer, s, Direction.West);
                         else if (dx == 1)
-                            ((IRotatable) s).setRotation(Direction.East);
+                            rotateStructure(layer, s, Direction.East);
                         else if (dy == -1)
-                            ((IRotatable) s).setRotation(Direction.South);
+                            rotateStructure(layer, s, Direction.South);
                         else if (dy == 1)
-                            ((IRotatable) s).setRotation(Direction.North);
+                            rotateStructure(layer, s, Direction.North);
                     }
                 }
 
@@ -1238,7 +1217,7 @@ public class Game extends GameScene {
                             Structure<?> q = layer.getStructure((int) endA.x + d.dx, (int) endA.y + d.dy);
                             if (q != null && q.getSchema().type == StructureType.Conveyor) {
                                 if (((Conveyor) q).getStructureInDirection(((Conveyor) q).getDirection()) == null) {
-                                    ((Conveyor) q).setRotation(d.inv());
+                                    rotateStructure(layer, q, d.inv());
                                     break;
                                 }
                             }
@@ -1295,7 +1274,7 @@ public class Game extends GameScene {
                     }
 
                     for (Pair<Structure<?>, CompoundTag> s : pairs) {
-                        s.getKey().paste(copyRegion, s.getVal());
+                        pasteStructure(layer, s.getKey(), copyRegion, s.getVal());
                     }
                 } else {
                     // check if conveyor next to endA has a free end and could be made to fit us
@@ -1304,7 +1283,7 @@ public class Game extends GameScene {
                             Structure<?> q = layer.getStructure(activeStructure.x + d.dx, activeStructure.y + d.dy);
                             if (q != null && q.getSchema().type == StructureType.Conveyor) {
                                 if (((Conveyor) q).getStructureInDirection(((Conveyor) q).getDirection()) == null) {
-                                    ((Conveyor) q).setRotation(d.inv());
+                                    rotateStructure(layer, q, d.inv());
                                     break;
                                 }
                             }
@@ -1315,7 +1294,7 @@ public class Game extends GameScene {
                     if (activeStructure instanceof ConveyorBridge) {
                         Structure<?> x = layer.getStructure(activeStructure.x, activeStructure.y);
                         if (x != null && x.getSchema().type == StructureType.Conveyor) {
-                            layer.removeStructure(x);
+                            destroyStructure(layer, x, false);
                         }
                     }
 
@@ -1332,25 +1311,7 @@ public class Game extends GameScene {
         }
 
         protected void placeStructure(Layer currentLayer, Structure<?> structure) {
-            if (currentLayer.addStructure(structure)) {
-                if (!GOD_MODE) {
-                    Items costs = structure.getSchema().buildCosts;
-
-                    for (Amount e : costs.entries) {
-                        removeResources(e.getItem(), e.getAmount(), true);
-                    }
-                }
-
-                synchronized (highlightLock) {
-                    if (tutorialHighlight.size > 0) {
-                        for (int i = 0; i < structure.getWidth(); i++) {
-                            for (int j = 0; j < structure.getHeight(); j++) {
-                                tutorialHighlight.remove((i + structure.x) * currentLayer.height + (j + structure.y));
-                            }
-                        }
-                    }
-                }
-
+            if (buildStructure(currentLayer, structure)) {
                 if (!structure.getSchema().has(Flags.NoDustEffect)) {
                     // pfx
                     for (int i = 0; i < structure.getWidth(); i++) {
@@ -1494,15 +1455,21 @@ public class Game extends GameScene {
     public static boolean SINGLE_FRAME = false;
     public static boolean UI_VISIBLE = true;
     public static boolean SMOOTH_CAMERA = false;
+    public static boolean PARALLEL_LAYERS = true;
+    public static boolean PARALLEL_CHUNKS = true;
+    public static boolean HEADLESS = false;
+    public static boolean OFFLINE_PROGRESS = true;
+    public static boolean TURBO = true;
+    public static boolean TRANSPORT_LINES = true;
+    public static boolean FLUID_NETWORKS = true;
+    public static boolean BELT_HEATMAP = false;
 
     private static final Pattern fileRegex = Pattern.compile("[^0-9a-zA-Z-_]");
 
     private static final HashMap<String, Texture> saveThumbnailCache = new HashMap<>();
 
     private static final Object layerLock = new Object();
-    private static final Object resourceLock = new Object();
     private static final Object highlightLock = new Object();
-    public static final Object renderThreadLock = new Object();
 
     static final Bounds tempBounds = new Bounds();
 
@@ -1519,7 +1486,7 @@ public class Game extends GameScene {
     public GameUi ui;
     public InputMultiplexer input;
 
-    public final Array<Runnable> renderThreadTasks = new Array<>();
+    public final Scheduler scheduler = new Scheduler();
 
     public Viewport viewport;
     // Player stuff
@@ -1530,6 +1497,7 @@ public class Game extends GameScene {
     public Layer layer;
     int deltaLayer;
     public final PowerGrid powerGrid = new PowerGrid();
+    public final Simulation simulation = new Simulation(layerLock, powerGrid);
     AStar<Integer> tilePathfinding;
     Network<Integer> tileNetwork = new AStar.Network<Integer>() {
 
@@ -1617,9 +1585,15 @@ public class Game extends GameScene {
     public EnumSet<ScienceType> sciences;
     public EnumSet<ScienceType> currentSciences;
 
+    // only written with the simulation lock held, read without
     protected EnumMap<ItemType, Integer> resources;
     protected EnumSet<ItemType> seenResources;
 
+    // count changes made by chunk workers, applied at the tick boundary
+    final AtomicIntegerArray pendingResources = new AtomicIntegerArray(ItemType.values.length);
+    volatile boolean hasPendingResources;
+    volatile boolean resourcesChanged;
+
     // fbo / saving
     FrameBuffer fbo;
     OrthographicCamera thumbCam;
@@ -1675,6 +1649,10 @@ public class Game extends GameScene {
     public int getGameSpeed() {
         return gameSpeed;
     }
+
+    public float getAchievedSpeed() {
+        return simulation.getAchievedSpeed();
+    }
     private boolean gamePaused = false;
 
     private boolean startNewGame;
@@ -1709,6 +1687,9 @@ public class Game extends GameScene {
 
     Thread loudnessCalculatorThread;
 
+    // set by the simulation when the visible layer changed under the placement trail
+    volatile boolean trailDirty;
+
     long lastAutosave;
     boolean autosaving;
 
@@ -1724,7 +1705,64 @@ public class Game extends GameScene {
         G = this;
 
         music = Quarry.Q.assets.get("music/Fading_into_the_Dream" + Const.MUSIC_FORMAT, Music.class);
-        input = new InputMultiplexer(this);
+        // input handlers mutate the world, so they must not interleave with a simulation tick
+        input = new InputMultiplexer(this) {
+            @Override
+            public boolean keyDown(int keycode) {
+                synchronized (layerLock) {
+                    return super.keyDown(keycode);
+                }
+            }
+
+            @Override
+            public boolean keyUp(int keycode) {
+                synchronized (layerLock) {
+                    return super.keyUp(keycode);
+                }
+            }
+
+            @Override
+            public boolean keyTyped(char character) {
+                synchronized (layerLock) {
+                    return super.keyTyped(character);
+                }
+            }
+
+            @Override
+            public boolean touchDown(int screenX, int screenY, int pointer, int button) {
+                synchronized (layerLock) {
+                    return super.touchDown(screenX, screenY, pointer, button);
+                }
+            }
+
+            @Override
+            public boolean touchUp(int screenX, int screenY, int pointer, int button) {
+                synchronized (layerLock) {
+                    return super.touchUp(screenX, screenY, pointer, button);
+                }
+            }
+
+            @Override
+            public boolean touchDragged(int screenX, int screenY, int pointer) {
+                synchronized (layerLock) {
+                    return super.touchDragged(screenX, screenY, pointer);
+                }
+            }
+
+            @Override
+            public boolean mouseMoved(int screenX, int screenY) {
+                synchronized (layerLock) {
+                    return super.mouseMoved(screenX, screenY);
+                }
+            }
+
+            @Override
+            public boolean scrolled(int amount) {
+                synchronized (layerLock) {
+                    return super.scrolled(amount);
+                }
+            }
+        };
 
         colorShader = new ShaderProgram(Gdx.files.internal("glsl/color.vs"), Gdx.files.internal("glsl/color.fs"));
         if (!colorShader.isCompiled())
@@ -1792,6 +1830,26 @@ public class Game extends GameScene {
         //        }
     }
 
+    /**
+     * Bare setup for {@link #HEADLESS} runs. Only creates what loading, saving and
+     * ticking the world touch, no shaders, ui, fbos or sounds.
+     */
+    public void initHeadless() {
+        G = this;
+        HEADLESS = true;
+        scheduler.setInline(true);
+
+        cam = new OrthographicCamera();
+
+        currentSciences = EnumSet.noneOf(ScienceType.class);
+        sciences = EnumSet.noneOf(ScienceType.class);
+        resources = new EnumMap<>(ItemType.class);
+        seenResources = EnumSet.noneOf(ItemType.class);
+        copyCost = new EnumMap<>(ItemType.class);
+
+        initParticles();
+    }
+
     protected void initParticles() {
         ParticleEffect fire = new ParticleEffect();
         fire.load(Gdx.files.internal("pfx/oven_fire.p"), Quarry.Q.atlas);
@@ -1844,12 +1902,17 @@ public class Game extends GameScene {
         ui.hideCopyTable();
         tutorialHighlight.clear();
 
-        powerGrid.clear();
+        synchronized (layerLock) {
+            powerGrid.clear();
+            simulation.clearCommands();
 
-        currentSciences.clear();
-        sciences.clear();
-        resources.clear();
-        getSeenResources().clear();
+            currentSciences.clear();
+            sciences.clear();
+            resources.clear();
+            getSeenResources().clear();
+            for (int i = 0; i < pendingResources.length(); i++)
+                pendingResources.set(i, 0);
+        }
         try {
             spatializedPlayer.stop();
         } catch (Exception e) {
@@ -1900,6 +1963,7 @@ public class Game extends GameScene {
             st.addToInventory(ItemType.Scaffolding, 40, null);
             st.addToInventory(ItemType.Stone, 20, null);
 
+            simulation.setLayers(layers);
         }
 
         layer = l0;
@@ -1928,6 +1992,10 @@ public class Game extends GameScene {
         startNewGame = true;
     }
 
+    public void requestTrailUpdate() {
+        trailDirty = true;
+    }
+
     @Override
     public void show() {
         super.show();
@@ -1936,6 +2004,8 @@ public class Game extends GameScene {
 
         ui.menu.init();
 
+        simulation.start();
+
         Gdx.input.setCatchBackKey(true);
 
         // initialize fbos
@@ -1953,6 +2023,8 @@ public class Game extends GameScene {
     public void hide() {
         super.hide();
 
+        simulation.stop();
+
         for (int i = 0; i < chunkFBOs.length; i++) {
             try {
                 // apparently can be run on non-main thread. too lazy to introduce a proper main-thread looper
@@ -1971,6 +2043,13 @@ public class Game extends GameScene {
             startNewGame = false;
         }
 
+        if (resourcesChanged && !HEADLESS) {
+            resourcesChanged = false;
+            ui.updateResources(true);
+            if (activeStructure != null)
+                camControl.updateActiveElementPlaceable();
+        }
+
         if (layers == null)
             return;
 
@@ -2039,27 +2118,14 @@ public class Game extends GameScene {
         }
 
         camControl.update();
-        if (SINGLE_FRAME) {
-            powerGrid.update(deltaTime, gameSpeed);
 
-            synchronized (layerLock) {
-                for (Layer l : layers) {
-                    l.update(deltaTime, gameSpeed);
-                    if (l.getIndex() != layerIndex) {
-                        l.postUpdate();
-                    }
-                }
-            }
-            SINGLE_FRAME = false;
-        } else {
-            powerGrid.update(deltaTime, gamePaused ? 0 : gameSpeed);
-
-            synchronized (layerLock) {
-                for (Layer l : layers) {
-                    l.update(deltaTime, gamePaused ? 0 : gameSpeed);
-                    if (l.getIndex() != layerIndex) {
-                        l.postUpdate();
-                    }
+        // layers and power grid are ticked by the simulation thread
+        if (trailDirty) {
+            trailDirty = false;
+            if (activeStructure != null) {
+                synchronized (layerLock) {
+                    camControl.updateTrail();
+                    camControl.updateActiveElementPlaceable();
                 }
             }
         }
@@ -2279,9 +2345,10 @@ public class Game extends GameScene {
 
         batch.begin();
 
-        synchronized (layerLock) {
-            layer.draw(cam, fboCam, viewport, batch, spriter, shaper, pfxBatch);
-        }
+        // chunks guard their own state, no need to stall the simulation here
+        Layer[] visibleLayers = simulation.getSnapshot().layers;
+        Layer visible = layerIndex < visibleLayers.length ? visibleLayers[layerIndex] : layer;
+        visible.draw(cam, fboCam, viewport, batch, spriter, shaper, pfxBatch);
 
         batch.end();
 
@@ -2692,7 +2759,7 @@ public class Game extends GameScene {
         if (ui.currentClickedStructure instanceof Substation) {
             Gdx.gl.glEnable(GL20.GL_BLEND);
             shaper.begin(ShapeType.Filled);
-            for (Edge e : ui.currentClickedStructure.getPowerNetwork().getMinimumSpanningTree()) {
+            for (Edge e : ui.currentClickedStructure.getPowerNetwork().getMinimumSpanningTreeLazy()) {
                 if (e.getA().layer != layer || e.getB().layer != G.layer)
                     continue;
                 if (e.getNetworkStrength() == NetworkStrength.PowerPole) {
@@ -2796,8 +2863,8 @@ public class Game extends GameScene {
                 shaper.rect(x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
             }
 
-            for (PowerNetwork n : powerGrid.getNetworks()) {
-                for (Edge e : n.getMinimumSpanningTree()) {
+            for (PowerNetwork n : simulation.getSnapshot().networks) {
+                for (Edge e : n.getMinimumSpanningTreeLazy()) {
                     if (e.getA().layer != layer || e.getB().layer != layer)
                         continue;
                     if (e.getNetworkStrength() == NetworkStrength.PowerPole) {
@@ -2872,10 +2939,7 @@ public class Game extends GameScene {
             }
         }
 
-        synchronized (renderThreadLock) {
-            if (renderThreadTasks.size > 0)
-                renderThreadTasks.removeIndex(0).run();
-        }
+        scheduler.run(Const.SCHEDULER_FRAME_BUDGET);
     }
 
     public void drawStructureAssists(Structure<?> structure, Recipe activeRecipe) {
@@ -3100,134 +3164,189 @@ public class Game extends GameScene {
 
     //////////////////////////////////////////////////////
 
-    public synchronized void addResources(ItemType item, int amount, boolean addToAStorage) {
+    /**
+     * Runs a world mutation right away if the caller holds the simulation lock, otherwise
+     * queues it for the simulation to apply at the next tick boundary.
+     */
+    public void mutate(Runnable mutation) {
+        if (Thread.holdsLock(layerLock)) {
+            mutation.run();
+        } else {
+            simulation.post(mutation);
+        }
+    }
+
+    public void addResources(final ItemType item, final int amount, boolean addToAStorage) {
         if (amount <= 0)
             return;
 
-        synchronized (resourceLock) {
-            int remaining = amount;
-
-            if (addToAStorage) {
-                synchronized (layerLock) {
-                    o: for (Layer layer : layerIter) {
-                        for (StorageStructure b : layer.storages) {
-                            if (!b.isRefundStorage())
-                                continue;
-
-                            // skip empty barrels
-                            if (b.getSchema().type == StructureType.Barrel && b.isEmpty())
-                                continue;
-
-                            remaining = b.addToInventoryWithRest(item, remaining);
-                            if (remaining == 0)
-                                break o;
-                        }
-                    }
+        if (!addToAStorage) {
+            changeResource(item, amount);
+            return;
+        }
 
-                    if (remaining > 0) {
-                        ui.toast.show(Quarry.Q.i18n.get("toast.refund_full"));
-                        // Delete items forever
-                        amount -= remaining;
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                int remaining = amount;
+                o: for (Layer layer : layerIter) {
+                    for (StorageStructure b : layer.storages) {
+                        if (!b.isRefundStorage())
+                            continue;
+
+                        // skip empty barrels
+                        if (b.getSchema().type == StructureType.Barrel && b.isEmpty())
+                            continue;
+
+                        remaining = b.addToInventoryWithRest(item, remaining);
+                        if (remaining == 0)
+                            break o;
                     }
-
                 }
-            }
 
-            Integer val = resources.get(item);
-            if (val == null)
-                val = 0;
-            val += amount;
-            resources.put(item, val);
-            resourceChangeNotifier.notify(Type.ADD, resourceChangePair.set(item, amount));
-            getSeenResources().add(item);
+                if (remaining > 0 && !HEADLESS)
+                    ui.toast.show(Quarry.Q.i18n.get("toast.refund_full"));
 
-            ui.updateResources(true);
-            if (activeStructure != null)
-                camControl.updateActiveElementPlaceable();
-        }
+                // Delete items forever
+                applyResource(item, amount - remaining);
+            }
+        });
     }
 
-    public synchronized boolean removeResources(ItemType item, int amount, boolean removeFromAStorage) {
+    /**
+     * Taking the items out of the storages needs the layer lock, post it with {@link #mutate(Runnable)} otherwise.
+     * Only the count is changed without it, which is applied at the next tick boundary.
+     *
+     * @return false if the storages did not hold enough
+     */
+    public boolean removeResources(ItemType item, int amount, boolean removeFromAStorage) {
         if (amount <= 0)
             return true;
 
-        synchronized (resourceLock) {
-            Integer val = resources.get(item);
-            if (val == null)
-                return false;
-            val -= amount;
-            if (val < 0)
-                val = 0;
-            resources.put(item, val);
-            resourceChangeNotifier.notify(Type.REMOVE, resourceChangePair.set(item, amount));
-            getSeenResources().add(item);
+        if (!removeFromAStorage) {
+            changeResource(item, -amount);
+            return true;
+        }
 
-            int remaining = amount;
+        if (!Thread.holdsLock(layerLock))
+            throw new IllegalStateException("Removing resources from storages without holding the layer lock");
 
-            if (removeFromAStorage) {
-                synchronized (layerLock) {
-                    for (Layer layer : layers) {
-                        for (Chunk c : layer.getChunks()) {
-                            if (c != null && c.isInit()) {
-                                for (Structure<?> s : c.getStructures()) {
-                                    if (s instanceof StorageStructure) {
-                                        remaining = ((StorageStructure) s).removeFromInventoryWithRest(item, remaining);
-                                        if (remaining == 0)
-                                            break;
-                                    }
-                                }
-                            }
+        applyResource(item, -amount);
+
+        int remaining = amount;
+        for (Layer layer : layers) {
+            for (Chunk c : layer.getChunks()) {
+                if (c != null && c.isInit()) {
+                    for (Structure<?> s : c.getStructures()) {
+                        if (s instanceof StorageStructure) {
+                            remaining = ((StorageStructure) s).removeFromInventoryWithRest(item, remaining);
+                            if (remaining == 0)
+                                break;
                         }
                     }
                 }
             }
+        }
 
-            ui.updateResources(true);
-            if (activeStructure != null)
-                camControl.updateActiveElementPlaceable();
-
-            if (remaining > 0) {
-                return false;
-            }
+        return remaining == 0;
+    }
 
-            return true;
+    void changeResource(ItemType item, int amount) {
+        if (Thread.holdsLock(layerLock)) {
+            applyResource(item, amount);
+        } else {
+            pendingResources.addAndGet(item.ordinal(), amount);
+            hasPendingResources = true;
         }
     }
 
-    public synchronized int getResource(ItemType item) {
-        synchronized (resourceLock) {
-            Integer val = resources.get(item);
-            if (val == null)
-                return 0;
-            return val;
-        }
+    void applyResource(ItemType item, int amount) {
+        if (amount == 0)
+            return;
+
+        Integer val = resources.get(item);
+        if (val == null)
+            val = 0;
+        resources.put(item, Math.max(0, val + amount));
+        resourceChangeNotifier.notify(amount > 0 ? Type.ADD : Type.REMOVE, resourceChangePair.set(item, Math.abs(amount)));
+        getSeenResources().add(item);
+        resourcesChanged = true;
     }
 
-    public synchronized void addSeenResource(ItemType item) {
-        synchronized (resourceLock) {
-            if (getSeenResources().add(item))
-                ui.updateResources(true);
+    /**
+     * Applies the count changes chunk workers made during the tick. Called by the simulation.
+     */
+    public void flushResources() {
+        if (!hasPendingResources)
+            return;
+
+        hasPendingResources = false;
+        for (int i = 0; i < pendingResources.length(); i++) {
+            int amount = pendingResources.getAndSet(i, 0);
+            if (amount != 0)
+                applyResource(ItemType.values[i], amount);
         }
     }
 
-    public synchronized boolean hasSeenResource(ItemType item) {
-        synchronized (resourceLock) {
-            return getSeenResources().contains(item);
-        }
+    public int getResource(ItemType item) {
+        Integer val = resources.get(item);
+        if (val == null)
+            return 0;
+        return val;
+    }
+
+    public void addSeenResource(final ItemType item) {
+        if (getSeenResources().contains(item))
+            return;
+
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                if (getSeenResources().add(item))
+                    resourcesChanged = true;
+            }
+        });
+    }
+
+    public boolean hasSeenResource(ItemType item) {
+        return getSeenResources().contains(item);
     }
 
     public EnumSet<ItemType> getSeenResources() {
         return seenResources;
     }
 
-    public synchronized Set<Map.Entry<ItemType, Integer>> getAllResources() {
+    public Set<Map.Entry<ItemType, Integer>> getAllResources() {
         return resources.entrySet();
     }
 
+    /**
+     * Recounts all stored items on a worker thread, the result is applied on the main thread.
+     */
     public void recalcResources() {
+        final EnumMap<ItemType, Integer> res = new EnumMap<>(ItemType.class);
+        scheduler.submit(Priority.Low, new Runnable() {
+            @Override
+            public void run() {
+                countResources(res);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                mutate(new Runnable() {
+                    @Override
+                    public void run() {
+                        resources.clear();
+                        resources.putAll(res);
+                        seenResources.addAll(res.keySet());
+                        resourcesChanged = true;
+                    }
+                });
+            }
+        });
+    }
 
-        // recalc resources
-        EnumMap<ItemType, Integer> res = new EnumMap<>(ItemType.class);
+    void countResources(EnumMap<ItemType, Integer> res) {
         synchronized (layerLock) {
             for (Layer l : layers) {
                 for (Chunk c : l.getChunks()) {
@@ -3255,23 +3374,17 @@ public class Game extends GameScene {
                 }
             }
         }
-        synchronized (resourceLock) {
-            resources.clear();
-            resources.putAll(res);
-            seenResources.addAll(res.keySet());
-            ui.updateResources(true);
-        }
     }
 
     //////////////////////////////////////////////////////
 
-    public synchronized boolean hasSciences(Collection<ScienceType> sciencesRequired) {
+    public boolean hasSciences(Collection<ScienceType> sciencesRequired) {
         if (GOD_MODE)
             return true;
         return sciences.containsAll(sciencesRequired);
     }
 
-    public synchronized boolean hasSciences(ScienceType... sciencesRequired) {
+    public boolean hasSciences(ScienceType... sciencesRequired) {
         if (GOD_MODE)
             return true;
         for (ScienceType s : sciencesRequired)
@@ -3280,27 +3393,174 @@ public class Game extends GameScene {
         return true;
     }
 
-    public synchronized boolean hasScience(ScienceType science) {
+    public boolean hasScience(ScienceType science) {
         return sciences.contains(science) || GOD_MODE;
     }
 
-    public synchronized boolean hasCurrentScience(ScienceType science) {
+    public boolean hasCurrentScience(ScienceType science) {
         return currentSciences.contains(science);
     }
 
-    public synchronized void addScience(ScienceType science) {
-        currentSciences.remove(science);
-        sciences.add(science);
-        ui.onScienceChange();
+    public void addScience(final ScienceType science) {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                currentSciences.remove(science);
+                sciences.add(science);
+                if (!HEADLESS) {
+                    scheduler.post(Priority.Normal, new Runnable() {
+                        @Override
+                        public void run() {
+                            ui.onScienceChange();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    public void removeCurrentScience(final ScienceType science) {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                currentSciences.remove(science);
+            }
+        });
+    }
+
+    public void addCurrentScience(final ScienceType science) {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                currentSciences.add(science);
+            }
+        });
+    }
+
+    //////////////////////////////////////////////////////
+    // Player mutations of the world. A recording journal picks them up and replays
+    // them through the same methods, so call them with the layer lock held.
+
+    public boolean buildStructure(Layer currentLayer, Structure<?> structure) {
+        if (!currentLayer.addStructure(structure))
+            return false;
+
+        // only record what was actually placed
+        Journal journal = simulation.getJournal();
+        if (journal != null)
+            journal.place(simulation.getTick(), currentLayer, structure);
+
+        if (!GOD_MODE) {
+            Items costs = structure.getSchema().buildCosts;
+
+            for (Amount e : costs.entries) {
+                removeResources(e.getItem(), e.getAmount(), true);
+            }
+        }
+
+        synchronized (highlightLock) {
+            if (tutorialHighlight.size > 0) {
+                for (int i = 0; i < structure.getWidth(); i++) {
+                    for (int j = 0; j < structure.getHeight(); j++) {
+                        tutorialHighlight.remove((i + structure.x) * currentLayer.height + (j + structure.y));
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param refund whether the player demolished it, which also removes attached
+     *            hoppers and refunds part of the build costs
+     */
+    public void destroyStructure(Layer currentLayer, Structure<?> s, boolean refund) {
+        Journal journal = simulation.getJournal();
+        if (journal != null)
+            journal.remove(simulation.getTick(), currentLayer, s, refund);
+
+        if (s instanceof CopperCable) {
+            currentLayer.removeCable((CopperCable) s);
+        } else {
+            currentLayer.removeStructure(s);
+        }
+
+        if (!refund)
+            return;
 
+        // remove attached hoppers
+        int removedHoppers = currentLayer.removeAttachedHoppers(s);
+
+        Items costs = s.getSchema().buildCosts;
+        for (Amount e : costs.entries) {
+            if (e.getAmount() > 1)
+                addResources(e.getItem(), (int) Math.ceil(e.getAmount()
+                        * (hasScience(ScienceType.ConsiderateConstruction) ? Const.REFUND_CONSIDERATE_PERCENTAGE
+                                : Const.REFUND_PERCENTAGE)),
+                        true);
+        }
+
+        // refund hoppers
+
+        costs = Hopper.classSchema.buildCosts;
+        for (Amount e : costs.entries) {
+            if (e.getAmount() > 1)
+                addResources(e.getItem(), (int) Math.ceil(e.getAmount() * removedHoppers
+                        * (hasScience(ScienceType.ConsiderateConstruction) ? Const.REFUND_CONSIDERATE_PERCENTAGE
+                                : Const.REFUND_PERCENTAGE)),
+                        true);
+        }
+    }
+
+    public void rotateStructure(Layer currentLayer, Structure<?> s, Direction d) {
+        Journal journal = simulation.getJournal();
+        if (journal != null)
+            journal.rotate(simulation.getTick(), currentLayer, s, d);
+
+        ((IRotatable) s).setRotation(d);
+    }
+
+    public void pasteStructure(Layer currentLayer, Structure<?> s, int[] region, CompoundTag tag) {
+        Journal journal = simulation.getJournal();
+        if (journal != null)
+            journal.paste(simulation.getTick(), currentLayer, s, region, tag);
+
+        s.paste(region, tag);
     }
 
-    public synchronized void removeCurrentScience(ScienceType science) {
-        currentSciences.remove(science);
+    public void consumeResources(ItemType item, int amount) {
+        Journal journal = simulation.getJournal();
+        if (journal != null)
+            journal.consume(simulation.getTick(), item, amount);
+
+        removeResources(item, amount, true);
     }
 
-    public synchronized void addCurrentScience(ScienceType science) {
-        currentSciences.add(science);
+    /**
+     * Saves the current world as the journal's base and starts recording on top of it.
+     * Stopping writes the journal next to that save, HeadlessLauncher can replay it.
+     */
+    public void toggleJournal() {
+        synchronized (layerLock) {
+            Journal journal = simulation.getJournal();
+            if (journal == null) {
+                String name = (currentGameName == null ? Quarry.Q.i18n.get("ui.unnamed_save") : currentGameName)
+                        + " Journal";
+                saveData(name, false, false);
+                simulation.setJournal(Journal.record(name, simulation.getTick()));
+                Logger.info("Game", "Recording journal for " + getFileName(name));
+            } else if (journal.isRecording()) {
+                simulation.setJournal(null);
+                try {
+                    journal.save(Journal.file(getFileName(journal.getSave()), true));
+                    Logger.info("Game", "Saved journal with " + journal.size() + " commands for "
+                            + getFileName(journal.getSave()));
+                } catch (IOException e) {
+                    Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+                }
+            }
+        }
     }
 
     //////////////////////////////////////////////////////
@@ -3395,6 +3655,7 @@ public class Game extends GameScene {
                     .Int("build", Quarry.Q.versionNumber)
                     .Byte("full", (byte) (Quarry.Q.fullVersion ? 1 : 0))
                     .Long("playTime", playTime)
+                    .Long("savedAt", System.currentTimeMillis())
                     .String("name", save)
 
                     .Short("layer", (short) layerIndex)
@@ -3411,7 +3672,7 @@ public class Game extends GameScene {
             builder
                     .End()
                     .Compound("Resources");
-            synchronized (resourceLock) {
+            synchronized (layerLock) {
                 Array<Short> seen = new Array<>();
 
                 for (ItemType seenResource : getSeenResources())
@@ -3460,14 +3721,16 @@ public class Game extends GameScene {
 
             data.free();
 
-            ui.toast.show(Quarry.Q.i18n.get("toast.game_saved"));
+            if (!HEADLESS)
+                ui.toast.show(Quarry.Q.i18n.get("toast.game_saved"));
             if (saveCallback != null) {
                 saveCallback.call(null);
                 saveCallback = null;
             }
         } catch (Exception e) {
             Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-            ui.toast.show(Quarry.Q.i18n.get("toast.save_error"));
+            if (!HEADLESS)
+                ui.toast.show(Quarry.Q.i18n.get("toast.save_error"));
         }
     }
 
@@ -3640,6 +3903,40 @@ public class Game extends GameScene {
         }
     }
 
+    /**
+     * Loads a save without the version prompts of {@link #load(String, Callback)},
+     * for {@link #HEADLESS} runs. The layers are only swapped in on the next frame.
+     */
+    public void loadHeadless(String filename, Callback<Object> callback) {
+        try {
+            CompoundTag meta = loadMetaData(filename);
+            if (meta == null) {
+                callback.call(false);
+                return;
+            }
+
+            loadData(meta, filename, callback, meta.Int("build", 0));
+        } catch (Exception e) {
+            Logger.error("Game", "Failed to load save: " + filename, e);
+            callback.call(e);
+        }
+    }
+
+    /**
+     * Runs {@link #HEADLESS} on layers built in code instead of a save.
+     */
+    public void loadHeadless(Array<Layer> myLayers) {
+        synchronized (layerLock) {
+            layers = myLayers;
+            for (Layer l : layers)
+                l.dirtyBounds.set(0, 0, l.width, l.height, Integer.MAX_VALUE);
+
+            layer = layers.get(0);
+            layerIndex = 0;
+            simulation.setLayers(layers);
+        }
+    }
+
     protected void loadData(CompoundTag meta, String filename, Callback<Object> callback, int build) {
         try {
             Logger.info("Game", "Loading save data for: " + filename);
@@ -3721,12 +4018,17 @@ public class Game extends GameScene {
 
             // for older versions. root science must be included
             sciences.add(ScienceType.Start);
-            ui.buildMenuSciences.clear();
-            ui.onScienceChange();
+            if (!HEADLESS) {
+                ui.buildMenuSciences.clear();
+                ui.onScienceChange();
+            }
+
+            final long savedAt = data.Long("savedAt", 0);
 
             data.free();
 
-            ui.updateResources(true);
+            if (!HEADLESS)
+                ui.updateResources(true);
 
             // re-validate all layers
             for (Layer l : myLayers) {
@@ -3758,11 +4060,13 @@ public class Game extends GameScene {
                         powerGrid.clearHighPowerCache();
 
                         layer = layers.get(layerIndex);
+                        simulation.setLayers(layers);
                         lastAutosave = System.currentTimeMillis();
 
                         System.gc();
                     }
-                    ui.updateResources(true);
+                    if (!HEADLESS)
+                        ui.updateResources(true);
                     layerChangeNotifier.notify(Type.BULK_ADD, null);
 
                     // fix for barrel bug, in <v76 and in <v80
@@ -3770,6 +4074,26 @@ public class Game extends GameScene {
                     if (fbuild < 115) {
                         recalcResources();
                     }
+
+                    if (OFFLINE_PROGRESS && !HEADLESS && savedAt > 0) {
+                        // ticks through a few minutes of game time, so it must not hold up the frame
+                        final long elapsed = System.currentTimeMillis() - savedAt;
+                        final double[] caught = new double[1];
+                        scheduler.submit(Priority.Normal, new Runnable() {
+                            @Override
+                            public void run() {
+                                caught[0] = OfflineProgress.catchUp(Game.this, elapsed);
+                            }
+                        }, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (caught[0] > 0) {
+                                    ui.updateResources(true);
+                                    ui.toast.show(Quarry.Q.i18n.format("toast.offline_progress", (int) (caught[0] / 60)));
+                                }
+                            }
+                        });
+                    }
                 }
             });
 
@@ -3906,6 +4230,9 @@ public class Game extends GameScene {
 
     @Override
     public void dispose() {
+        simulation.stop();
+        scheduler.dispose();
+
         for (FrameBuffer fbo : chunkFBOs)
             if (fbo != null)
                 fbo.dispose();
@@ -3989,6 +4316,12 @@ public class Game extends GameScene {
                 case Keys.U:
                     FOGMODE = true;
                     break;
+                case Keys.J:
+                    toggleJournal();
+                    break;
+                case Keys.M:
+                    BELT_HEATMAP = !BELT_HEATMAP;
+                    break;
                 case Keys.W:
                     for (int i = 0; i < layer.width; i++)
                         for (int j = 0; j < layer.height; j++)
@@ -4108,12 +4441,14 @@ public class Game extends GameScene {
     @Override
     public void pause() {
         super.pause();
+        simulation.setSuspended(true);
         playTime = getPlayTime();
     }
 
     @Override
     public void resume() {
         super.resume();
+        simulation.setSuspended(false);
         lastTimerStart = System.currentTimeMillis();
     }
 
@@ -4145,12 +4480,15 @@ public class Game extends GameScene {
     }
 
     public void increaseSpeed() {
-        gameSpeed = Math.min(gameSpeed * 2, 100);
+        gameSpeed = Math.min(gameSpeed * 2, TURBO ? Const.TURBO_MAX_SPEED : Const.SIM_MAX_STEP_SPEED);
     }
 
     public void cycleSpeed() {
-        if (gameSpeed >= 8) {
+        if (gameSpeed >= (TURBO ? Const.TURBO_MAX_SPEED : Const.SIM_MAX_STEP_SPEED)) {
             gameSpeed = 1;
+        } else if (gameSpeed >= Const.SIM_MAX_STEP_SPEED) {
+            // turbo speeds
+            gameSpeed = Math.min(gameSpeed * 4, Const.TURBO_MAX_SPEED);
         } else {
             gameSpeed *= 2;
         }
@@ -4205,6 +4543,7 @@ public class Game extends GameScene {
                     false);
             Generator.G.generate(l);
             layers.add(l);
+            simulation.setLayers(layers);
             layerChangeNotifier.notify(Type.ADD, l);
             return l;
         }
@@ -2278,7 +2278,14 @@ public class GameUi implements Ui {
         }
 
         if (speedButton != null) {
-            speedButton.setText("x" + Game.G.getGameSpeed());
+            int speed = Game.G.getGameSpeed();
+            int achieved = Math.round(Game.G.getAchievedSpeed());
+            // show what turbo mode actually keeps up with
+            if (speed > Const.SIM_MAX_STEP_SPEED && !Game.G.isPaused() && achieved < speed) {
+                speedButton.setText("~x" + achieved);
+            } else {
+                speedButton.setText("x" + speed);
+            }
         }
 
         tutorial.update();
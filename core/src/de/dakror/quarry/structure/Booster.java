@@ -366,6 +366,8 @@ public class Booster extends Structure<Schema> {
     }
 
     private void updateUI() {
+        if (Game.HEADLESS) return;
+
         if (meshMode && mesh.contains(Game.G.ui.currentClickedStructure)) {
             ((Booster) Game.G.ui.currentClickedStructure).updateUI();
             return;
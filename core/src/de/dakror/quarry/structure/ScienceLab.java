@@ -96,7 +96,8 @@ public class ScienceLab extends Structure<Schema> {
     static SfxSound sfxSound;
 
     static {
-        sfxSound = Quarry.Q.assets.get("sfx/science" + Const.SFX_FORMAT);
+        if (!Game.HEADLESS)
+            sfxSound = Quarry.Q.assets.get("sfx/science" + Const.SFX_FORMAT);
     }
 
     public ScienceLab(int x, int y) {
@@ -177,7 +178,8 @@ public class ScienceLab extends Structure<Schema> {
         if (activeScience != null && !waitingForInputs) {
             workingTime -= deltaTime * gameSpeed;
             if (workingTime <= 0) {
-                Quarry.Q.sound.play(sfxSound);
+                if (sfxSound != null)
+                    Quarry.Q.sound.play(sfxSound);
 
                 Game.G.removeCurrentScience(activeScience);
                 Game.G.addScience(activeScience);
@@ -68,6 +68,8 @@ public class ShaftDrill extends ProducerStructure {
 
     int depth;
 
+    boolean pendingStep;
+
     public ShaftDrill(int x, int y) {
         super(x, y, classSchema);
     }
@@ -87,12 +89,15 @@ public class ShaftDrill extends ProducerStructure {
     private boolean isJammed() {
         if (layer == null) return false;
 
-        if (layer.getIndex() == Game.G.getLayerCount() - 1) {
+        // read the published layers, the simulation lock is held while layers update
+        Layer[] layers = Game.G.simulation.getSnapshot().layers;
+
+        if (layer.getIndex() >= layers.length - 1) {
             return false;
         } else {
             for (int ind = 1; ind <= depth + 1; ind++) {
-                Layer l = Game.G.getLayer(layer.getIndex() + ind);
-                if (l == null) break;
+                if (layer.getIndex() + ind >= layers.length) break;
+                Layer l = layers[layer.getIndex() + ind];
 
                 for (int i = 0; i < getWidth(); i++) {
                     for (int j = 0; j < getHeight(); j++) {
@@ -126,6 +131,18 @@ public class ShaftDrill extends ProducerStructure {
 
     @Override
     protected void doProductionStep() {
+        // drilling creates structures (and possibly a layer) below, so wait for the tick barrier
+        pendingStep = true;
+        queueHandoff();
+    }
+
+    @Override
+    public void applyHandoff() {
+        super.applyHandoff();
+
+        if (!pendingStep) return;
+        pendingStep = false;
+
         Layer l = null;
         if (layer.getIndex() + depth == Game.G.getLayerCount() - 1) {
             l = Game.G.addLayer();
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright 2018 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item;
+import de.dakror.quarry.game.Item.FluidType;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.structure.base.Dock.DockType;
+import de.dakror.quarry.structure.logistics.Valve;
+
+/**
+ * Connected tubes of the same kind within one chunk, sharing a single volume of fluid.
+ * Whatever flows into any of the tubes is available at all of them right away, so a tick
+ * only has to push fluid out of the ports, the tubes connected to anything outside the network,
+ * no matter how long the pipe is. Every tube counts as filled to the same level.
+ * Valves and the tubes across chunk borders are outside, they exchange fluid with the
+ * network the same way single tubes do with each other.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class FluidNetwork {
+    static final AtomicInteger rebuilds = new AtomicInteger();
+
+    // the head updates the whole network
+    final FluidTubeStructure[] members;
+    final int capacity;
+
+    int volume;
+    FluidType fluid;
+    ItemType fluidItem;
+    // layer tick the fluid flows out next, the head sleeps until then
+    long nextFlow;
+
+    // tube and direction of every connection leaving the network
+    FluidTubeStructure[] portTubes;
+    int[] portDirs;
+
+    boolean dissolved;
+    int stamp;
+
+    FluidNetwork(FluidTubeStructure[] members, ItemType fluidItem) {
+        this.members = members;
+
+        int capacity = 0;
+        for (int i = 0; i < members.length; i++) {
+            FluidTubeStructure t = members[i];
+            capacity += t.getSchema().maxFluid;
+            volume += t.fluidLevel;
+        }
+        this.capacity = capacity;
+        volume = Math.min(volume, capacity);
+
+        if (volume > 0 && fluidItem != null) {
+            this.fluidItem = fluidItem;
+            fluid = Item.fluid((byte) fluidItem.value);
+        } else {
+            volume = 0;
+        }
+
+        for (int i = 0; i < members.length; i++) {
+            members[i].network = this;
+            members[i].networkIndex = i;
+        }
+
+        updatePorts();
+    }
+
+    public FluidTubeStructure getHead() {
+        return members[0];
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    /**
+     * Share of the volume counted towards a member, spread as evenly as possible.
+     */
+    int levelOf(FluidTubeStructure t) {
+        int n = members.length;
+        return volume / n + (t.networkIndex < volume % n ? 1 : 0);
+    }
+
+    ItemType getFluidItem() {
+        return fluidItem;
+    }
+
+    boolean canAccept(FluidTubeStructure t, ItemType item) {
+        if (volume >= capacity) return false;
+        if (fluid != null) return item == fluidItem;
+        else return t.isAllowedFluid(item);
+    }
+
+    int accept(FluidTubeStructure t, ItemType item, int amount) {
+        if (volume >= capacity) return amount;
+        if (fluid != null && item != fluidItem) return amount;
+
+        if (fluid == null) {
+            if (!t.isAllowedFluid(item)) return amount;
+            fluid = Item.fluid((byte) item.value);
+            fluidItem = item;
+        }
+
+        FluidTubeStructure head = members[0];
+        if (nextFlow <= head.getTick()) nextFlow = head.getTickAfter(fluid.viscosity);
+        int old = volume;
+        volume = Math.min(capacity, volume + amount);
+        head.wake();
+
+        return Math.max(0, old + amount - volume);
+    }
+
+    boolean hasPendingWork() {
+        return fluid != null && (volume <= 0 || members[0].getTick() >= nextFlow);
+    }
+
+    void update(int gameSpeed) {
+        if (volume <= 0 && fluid != null) {
+            volume = 0;
+            fluid = null;
+            fluidItem = null;
+            nextFlow = 0;
+        }
+        if (fluid == null || gameSpeed == 0) return;
+
+        FluidTubeStructure head = members[0];
+        if (head.getTick() < nextFlow) {
+            head.wakeAt(nextFlow);
+            return;
+        }
+
+        for (int i = 0; i < portTubes.length; i++) {
+            FluidTubeStructure t = portTubes[i];
+            int d = portDirs[i];
+            Structure<?> s = t.structures[d];
+            if (s == null || t.types[d] == DockType.FluidOut || !s.canAccept(fluidItem, t.x, t.y, Direction.values[d])) continue;
+
+            int level = levelOf(t);
+            int dif = 0;
+            if (s instanceof FluidTubeStructure && !(s instanceof Valve)) {
+                int other = ((FluidTubeStructure) s).getFluidLevel();
+                if (other < level) dif = level - other;
+            } else {
+                dif = level;
+            }
+
+            dif = (int) Math.ceil(dif * fluid.pressure);
+
+            if (dif > 0) {
+                volume = volume - dif + s.acceptFluid(fluidItem, dif, t);
+                t.decuppleTime[d] = t.getTickAfter(FluidTubeStructure.decupple);
+            }
+        }
+
+        nextFlow = head.getTickAfter(fluid.viscosity);
+        head.wakeAt(nextFlow);
+    }
+
+    void updatePorts() {
+        int count = 0;
+        for (FluidTubeStructure t : members)
+            for (int d = 0; d < 4; d++)
+                if (isPort(t, d)) count++;
+
+        portTubes = new FluidTubeStructure[count];
+        portDirs = new int[count];
+
+        int k = 0;
+        for (FluidTubeStructure t : members) {
+            for (int d = 0; d < 4; d++) {
+                if (isPort(t, d)) {
+                    portTubes[k] = t;
+                    portDirs[k] = d;
+                    k++;
+                }
+            }
+        }
+    }
+
+    boolean isPort(FluidTubeStructure t, int d) {
+        Structure<?> s = t.structures[d];
+        return s != null && !(s instanceof FluidTubeStructure && ((FluidTubeStructure) s).network == this);
+    }
+
+    /**
+     * Hands the fluid back to the member tubes, which exchange it on their own again.
+     */
+    public void dissolve() {
+        if (dissolved) return;
+        dissolved = true;
+
+        for (FluidTubeStructure t : members) {
+            t.fluidLevel = levelOf(t);
+            t.fluid = t.fluidLevel > 0 ? fluid : null;
+            t.fluidItem = t.fluidLevel > 0 ? fluidItem : null;
+            t.nextFlow = 0;
+            t.network = null;
+            t.wake();
+        }
+
+        volume = 0;
+    }
+
+    boolean matches(Array<FluidTubeStructure> tubes) {
+        if (dissolved || tubes.size != members.length) return false;
+        for (int i = 0; i < tubes.size; i++)
+            if (tubes.get(i).network != this) return false;
+        return true;
+    }
+
+    /**
+     * Merges the connected tubes of a chunk into networks, keeping the ones that did not change.
+     */
+    public static void rebuild(Array<FluidTubeStructure> tubes, boolean enabled) {
+        // candidates carry the stamp, visited tubes the one after it
+        int stamp = rebuilds.addAndGet(2);
+
+        if (enabled) {
+            for (int i = 0; i < tubes.size; i++) {
+                FluidTubeStructure t = tubes.get(i);
+                if (isCandidate(t)) t.networkStamp = stamp;
+            }
+
+            Array<FluidTubeStructure> group = new Array<>(FluidTubeStructure.class);
+            for (int i = 0; i < tubes.size; i++) {
+                FluidTubeStructure t = tubes.get(i);
+                if (t.networkStamp != stamp) continue;
+
+                group.clear();
+                group.add(t);
+                t.networkStamp = stamp + 1;
+                for (int j = 0; j < group.size; j++) {
+                    FluidTubeStructure g = group.get(j);
+                    for (int d = 0; d < 4; d++) {
+                        Structure<?> s = g.structures[d];
+                        if (isLinked(g, s, d, stamp)) {
+                            ((FluidTubeStructure) s).networkStamp = stamp + 1;
+                            group.add((FluidTubeStructure) s);
+                        }
+                    }
+                }
+
+                if (group.size < Const.FLUID_NETWORK_MIN_SIZE) continue;
+
+                // tubes with different fluids next to each other never mix, so they stay on their own
+                ItemType item = null;
+                boolean mixed = false;
+                for (FluidTubeStructure g : group) {
+                    ItemType f = g.getFluidItem();
+                    if (f == null) continue;
+                    if (item != null && f != item) mixed = true;
+                    item = f;
+                }
+                if (mixed) continue;
+
+                FluidNetwork n = t.network;
+                if (n == null || !n.matches(group)) {
+                    for (FluidTubeStructure g : group)
+                        if (g.network != null) g.network.dissolve();
+                    n = new FluidNetwork(group.toArray(), item);
+                } else {
+                    n.updatePorts();
+                }
+                n.stamp = stamp;
+            }
+        }
+
+        for (int i = 0; i < tubes.size; i++) {
+            FluidNetwork n = tubes.get(i).network;
+            if (n != null && n.stamp != stamp) n.dissolve();
+        }
+    }
+
+    static boolean isCandidate(FluidTubeStructure t) {
+        return !(t instanceof Valve) && t.layer != null && !t.isDestroyed();
+    }
+
+    static boolean isLinked(FluidTubeStructure a, Structure<?> s, int d, int stamp) {
+        if (!(s instanceof FluidTubeStructure)) return false;
+        FluidTubeStructure b = (FluidTubeStructure) s;
+        return b.networkStamp == stamp && a.getClass() == b.getClass()
+                && b.structures[Direction.values[d].inv().ordinal()] == a;
+    }
+}
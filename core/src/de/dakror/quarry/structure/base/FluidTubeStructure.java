@@ -79,15 +79,21 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     protected int fluidLevel;
     protected FluidType fluid;
     protected ItemType fluidItem;
-    protected float delay;
+    // layer tick the fluid flows on next, the tube sleeps until then
+    protected long nextFlow;
 
     // gets resolved into #structures in postLoad
     protected int[] structs;
     protected Structure<?>[] structures = new Structure[4];
     protected DockType[] types = new DockType[4];
 
-    // determines when to cut the connection to or from Docks (only visually) gets renewed when acceptFluid is called
-    protected float[] decuppleTime = new float[4];
+    // layer tick to cut the connection to or from Docks at (only visually), gets renewed when acceptFluid is called
+    protected long[] decuppleTime = new long[4];
+
+    // holds the fluid instead of this tube while set, see FluidNetwork
+    FluidNetwork network;
+    int networkIndex;
+    int networkStamp;
 
     Table ui;
     Container<Table> container;
@@ -111,8 +117,21 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         });
     }
 
+    public int getFluidLevel() {
+        FluidNetwork n = network;
+        return n != null ? n.levelOf(this) : fluidLevel;
+    }
+
+    public ItemType getFluidItem() {
+        FluidNetwork n = network;
+        return n != null ? n.getFluidItem() : fluidItem;
+    }
+
     @Override
     public boolean canAccept(ItemType item, int x, int y, Direction dir) {
+        FluidNetwork n = network;
+        if (n != null) return n.canAccept(this, item);
+
         if (fluidLevel >= getSchema().maxFluid) return false;
         if (fluid != null) return item == fluidItem;
         else return isAllowedFluid(item);
@@ -122,6 +141,13 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
 
     @Override
     public int acceptFluid(ItemType item, int amount, Structure<?> source) {
+        FluidNetwork n = network;
+        if (n != null) {
+            int rest = n.accept(this, item, amount);
+            if (clicked) updateUI();
+            return rest;
+        }
+
         if (fluidLevel >= getSchema().maxFluid) return amount;
         if (fluid != null && item != fluidItem) return amount;
 
@@ -131,11 +157,12 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
             fluidItem = item;
         }
 
-        if (delay <= 0) delay = fluid.viscosity;
+        if (nextFlow <= getTick()) nextFlow = getTickAfter(fluid.viscosity);
         int old = fluidLevel;
         fluidLevel = Math.min(getSchema().maxFluid, fluidLevel + amount);
 
         if (clicked) updateUI();
+        wake();
 
         return Math.max(0, old + amount - fluidLevel);
     }
@@ -148,51 +175,71 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
             updateStructures();
         }
 
+        FluidNetwork n = network;
+        if (n != null) {
+            if (n.getHead() == this) n.update(gameSpeed);
+            if (clicked) updateUI();
+            return;
+        }
+
         if (fluidLevel <= 0 && fluid != null) {
             fluidLevel = 0;
             fluid = null;
             fluidItem = null;
-            delay = 0;
+            nextFlow = 0;
             updateUI();
         }
         if (fluid == null || gameSpeed == 0) return;
 
-        delay -= deltaTime * gameSpeed;
+        if (getTick() < nextFlow) {
+            wakeAt(nextFlow);
+            return;
+        }
 
-        if (delay <= 0) {
-            for (int i = 0; i < 4; i++) {
-                if (structures[i] != null && types[i] != DockType.FluidOut && structures[i].canAccept(fluidItem, x, y, Direction.values[i])) {
-                    int dif = 0;
-                    if (structures[i] instanceof FluidTubeStructure && !(structures[i] instanceof Valve)) {
-                        if (((FluidTubeStructure) structures[i]).fluidLevel < fluidLevel) {
-                            dif = fluidLevel - ((FluidTubeStructure) structures[i]).fluidLevel;
-                        }
-                    } else {
-                        dif = fluidLevel;
+        for (int i = 0; i < 4; i++) {
+            if (structures[i] != null && types[i] != DockType.FluidOut && structures[i].canAccept(fluidItem, x, y, Direction.values[i])) {
+                int dif = 0;
+                if (structures[i] instanceof FluidTubeStructure && !(structures[i] instanceof Valve)) {
+                    int other = ((FluidTubeStructure) structures[i]).getFluidLevel();
+                    if (other < fluidLevel) {
+                        dif = fluidLevel - other;
                     }
+                } else {
+                    dif = fluidLevel;
+                }
 
-                    dif = (int) Math.ceil(dif * fluid.pressure);
+                dif = (int) Math.ceil(dif * fluid.pressure);
 
-                    if (dif > 0) {
-                        fluidLevel = fluidLevel - dif + structures[i].acceptFluid(fluidItem, dif, this);
-                        decuppleTime[i] = decupple;
-                    }
+                if (dif > 0) {
+                    fluidLevel = fluidLevel - dif + structures[i].acceptFluid(fluidItem, dif, this);
+                    decuppleTime[i] = getTickAfter(decupple);
                 }
             }
+        }
 
-            delay = fluid.viscosity;
+        nextFlow = getTickAfter(fluid.viscosity);
+        wakeAt(nextFlow);
 
-            if (clicked) updateUI();
-        }
+        if (clicked) updateUI();
+    }
 
-        for (int i = 0; i < 4; i++) {
-            if (decuppleTime[i] > 0) {
-                decuppleTime[i] -= deltaTime * gameSpeed;
-                if (decuppleTime[i] <= 0) {
-                    decuppleTime[i] = 0;
-                }
-            }
-        }
+    @Override
+    public boolean hasPendingWork() {
+        if (clicked) return true;
+
+        FluidNetwork n = network;
+        // the other members only have to show their share when clicked
+        if (n != null) return n.getHead() == this && n.hasPendingWork();
+
+        // an emptied tube still has to reset, otherwise the timer wakes it up when the fluid flows next
+        return fluid != null && (fluidLevel <= 0 || getTick() >= nextFlow);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        FluidNetwork n = network;
+        if (n != null) n.dissolve();
     }
 
     @Override
@@ -235,7 +282,11 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     public void drawFrame(SpriteRenderer spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         super.drawFrame(spriter, shaper, pfxBatch);
 
-        if (fluidLevel > 0) {
+        int fluidLevel = getFluidLevel();
+        ItemType fluidItem = getFluidItem();
+        long tick = getTick();
+        if (fluidLevel > 0 && fluidItem != null) {
+            FluidType fluid = Item.fluid((byte) fluidItem.value);
             float width = Math.max(1, 27.5f * (fluidLevel / (float) getSchema().maxFluid));
 
             float o = (Const.TILE_SIZE - width) / 2;
@@ -243,16 +294,16 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
             spriter.add(fluid.icon, x * Const.TILE_SIZE + o, y * Const.TILE_SIZE + o, Const.Z_TUBES + 0.01f, width, width);
 
             // TODO: make prettier (textures get stretched)
-            if (structures[0] != null || decuppleTime[0] > 0) {
+            if (structures[0] != null || decuppleTime[0] > tick) {
                 spriter.add(fluid.icon, x * Const.TILE_SIZE + o, y * Const.TILE_SIZE + (Const.TILE_SIZE - width) / 2 + width, Const.Z_TUBES + 0.01f, width, o);
             }
-            if (structures[1] != null || decuppleTime[1] > 0) {
+            if (structures[1] != null || decuppleTime[1] > tick) {
                 spriter.add(fluid.icon, x * Const.TILE_SIZE + o + width, y * Const.TILE_SIZE + o, Const.Z_TUBES + 0.01f, o, width);
             }
-            if (structures[2] != null || decuppleTime[2] > 0) {
+            if (structures[2] != null || decuppleTime[2] > tick) {
                 spriter.add(fluid.icon, x * Const.TILE_SIZE + o, y * Const.TILE_SIZE, Const.Z_TUBES + 0.01f, width, o);
             }
-            if (structures[3] != null || decuppleTime[3] > 0) {
+            if (structures[3] != null || decuppleTime[3] > tick) {
                 spriter.add(fluid.icon, x * Const.TILE_SIZE, y * Const.TILE_SIZE + o, Const.Z_TUBES + 0.01f, o, width);
             }
         }
@@ -268,9 +319,10 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         }
         b.IntArray("structs", str);
 
+        ItemType fluidItem = getFluidItem();
         if (fluidItem != null) {
             b.Short("fluid", fluidItem.value);
-            b.Short("level", (short) fluidLevel);
+            b.Short("level", (short) getFluidLevel());
         }
     }
 
@@ -331,6 +383,8 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     }
 
     private void updateUI() {
+        ItemType fluidItem = getFluidItem();
+        int fluidLevel = getFluidLevel();
         if (container == null) {
             container = new Container<>();
         }
@@ -89,6 +89,7 @@ public abstract class GeneratorStructure extends ProducerStructure {
         if (index > -1) {
             activeRecipe = getSchema().recipeList.recipes[activeRecipeIndex];
             workDelay = activeRecipe.workingTime;
+            wake();
         } else {
             activeRecipe = null;
             activeItems = null;
@@ -177,6 +177,7 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
         powerReceivedThisTick += add - old;
 
         powerLevel = add;
+        wake();
 
         return amount - (add - old);
     }
@@ -468,6 +469,7 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
             activeRecipe = getSchema().recipeList.recipes[activeRecipeIndex];
             workDelay = activeRecipe.workingTime; // 批处理不增加工作时间
             powerCapacity = activeRecipe.getPower() * batchSize; // 批处理需要N倍电力
+            wake();
         } else {
             activeRecipe = null;
             activeItems = null;
@@ -579,6 +581,15 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
         return false;
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        // waiting for inputs, picking a recipe in acceptItem/acceptFluid wakes it up again.
+        // the power meter has to settle first, it's drawn from the mean
+        return (activeRecipe != null && !sleeping)
+                || powerLevelMean.getLowest() != powerLevelMean.getHighest()
+                || hasComponentWork();
+    }
+
     protected void drawRecipeProgress(ShapeRenderer shaper) {
         if (activeRecipe != null && hasCapacity) {
             shaper.setColor(0, 0.5f, 0, 1);
@@ -57,6 +57,12 @@ public abstract class RouterStructure extends Structure<RouterSchema> {
     protected int[] tubeIdx;
     protected boolean stuck;
 
+    // bits 0-3 are the directions an item may leave in
+    protected static final int ROUTE_ACCEPT = 1 << 4;
+
+    // by ItemType ordinal, dropped whenever the tubes or settings change
+    private volatile int[] routes;
+
     protected RouterStructure(int x, int y, RouterSchema schema) {
         super(x, y, schema);
         tubes = new Conveyor[4];
@@ -64,19 +70,47 @@ public abstract class RouterStructure extends Structure<RouterSchema> {
 
     @Override
     public boolean canAccept(ItemType item, int x, int y, Direction dir) {
-        return currentItem == null && !item.categories.contains(ItemCategory.Fluid);
+        return currentItem == null && (getRoute(item) & ROUTE_ACCEPT) != 0;
     }
 
     @Override
     public boolean acceptItem(ItemType item, Structure<?> source, Direction dir) {
-        if (currentItem != null || item.categories.contains(ItemCategory.Fluid)) return false;
+        if (currentItem != null || (getRoute(item) & ROUTE_ACCEPT) == 0) return false;
 
         currentItem = item;
         currentSource = source;
         currentSourceDirection = dir.inv();
+        wake();
         return true;
     }
 
+    protected int getRoute(ItemType item) {
+        int[] r = routes;
+        if (r == null) {
+            r = new int[ItemType.values.length];
+            for (ItemType t : ItemType.values)
+                r[t.ordinal()] = buildRoute(t);
+            routes = r;
+        }
+        return r[item.ordinal()];
+    }
+
+    /**
+     * Only called when the routing table is rebuilt, see {@link #invalidateRoutes()}.
+     */
+    protected int buildRoute(ItemType item) {
+        if (item.categories.contains(ItemCategory.Fluid)) return 0;
+
+        int route = ROUTE_ACCEPT;
+        for (int i = 0; i < 4; i++)
+            if (tubes[i] != null) route |= 1 << i;
+        return route;
+    }
+
+    protected void invalidateRoutes() {
+        routes = null;
+    }
+
     protected void updateTubes() {
         for (int i = 0; i < 4; i++) {
             Direction d = Direction.values[i];
@@ -88,6 +122,7 @@ public abstract class RouterStructure extends Structure<RouterSchema> {
                     || (s.getSchema().type == StructureType.ConveyorBridge
                             && (((ConveyorBridge) s).getDirection() != d.inv() && ((ConveyorBridge) s).getDirection2() != d.inv()))) ? (Conveyor) s : null;
         }
+        invalidateRoutes();
     }
 
     @Override
@@ -98,6 +133,7 @@ public abstract class RouterStructure extends Structure<RouterSchema> {
         for (int i = 0; i < 4; i++) {
             tubes[i] = tubeIdx[i] == -1 ? null : (Conveyor) layer.getStructure(tubeIdx[i]);
         }
+        invalidateRoutes();
     }
 
     @Override
@@ -129,6 +165,11 @@ public abstract class RouterStructure extends Structure<RouterSchema> {
         }
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        return currentItem != null;
+    }
+
     protected abstract boolean dispatchItem();
 
     @Override
@@ -29,6 +29,7 @@ import de.dakror.common.BiCallback;
 import de.dakror.quarry.Quarry;
 import de.dakror.quarry.game.Item.Items;
 import de.dakror.quarry.game.Science.ScienceType;
+import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Dock.DockFilter;
 import de.dakror.quarry.structure.base.Dock.DockType;
 import de.dakror.quarry.structure.base.ProducerStructure.ProducerSchema;
@@ -106,7 +107,7 @@ public class Schema {
         this.version = (byte) version;
         loudness = 1;
 
-        if (this.sfx != null) {
+        if (this.sfx != null && !Game.HEADLESS) {
             this.sfx.sound = Quarry.Q.assets.get("sfx/" + sfx.sfx);
         }
 
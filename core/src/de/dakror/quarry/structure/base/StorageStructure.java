@@ -64,6 +64,7 @@ public abstract class StorageStructure extends Structure<Schema> {
             if (!layer.fake) Game.G.addResources(item, amount, false);
             setItemNotifications();
             onItemCountChanged(item);
+            wake();
         }
         return result;
     }
@@ -73,6 +74,7 @@ public abstract class StorageStructure extends Structure<Schema> {
         int result = ((IStorage) components[0]).addWithRest(item, amount);
         setItemNotifications();
         onItemCountChanged(item);
+        wake();
         return result;
     }
 
@@ -89,6 +91,7 @@ public abstract class StorageStructure extends Structure<Schema> {
         if (!layer.fake) Game.G.addResources(item, amount, false);
         ((IStorage) components[0]).addUnsafe(item, amount);
         setItemNotifications();
+        wake();
         return true;
     }
 
@@ -37,6 +37,7 @@ import de.dakror.common.libgdx.math.QuadTree.Region;
 import de.dakror.common.libgdx.render.SpriteRenderer;
 import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Chunk;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.game.power.PowerNetwork;
@@ -95,6 +96,13 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
     protected Direction upDirection;
     protected Dock[] docks;
 
+    boolean handoffQueued;
+
+    // skipped by the chunk update until woken up, see #hasPendingWork
+    volatile boolean dormant;
+    // earliest tick the timer wheel of the chunk is going to wake this up at
+    long timerTick;
+
     protected Structure(int x, int y, T schema) {
         this.x = x;
         this.y = y;
@@ -255,6 +263,64 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
             c.update(deltaTime, gameSpeed, dirtyBounds);
     }
 
+    /**
+     * Whether {@link #update} has anything left to do. Structures without pending work go dormant and
+     * are skipped by their chunk until {@link #wake()} is called. Dirty bounds wake the whole chunk.
+     */
+    public boolean hasPendingWork() {
+        return true;
+    }
+
+    protected boolean hasComponentWork() {
+        for (Component c : components)
+            if (c.hasPendingWork()) return true;
+        return false;
+    }
+
+    public void wake() {
+        if (!dormant || layer == null) return;
+
+        Chunk c = layer.getChunk(x, y);
+        if (c != null) c.wake(this);
+    }
+
+    /**
+     * Has the chunk wake this up again at the given layer tick, so it can stay dormant while waiting for it.
+     */
+    public void wakeAt(long tick) {
+        if (layer == null) return;
+
+        // an earlier wake up is coming anyway and checks again
+        long t = timerTick;
+        if (t > layer.getTick() && t <= tick) return;
+
+        Chunk c = layer.getChunk(x, y);
+        if (c != null) {
+            timerTick = tick;
+            c.schedule(this, tick);
+        }
+    }
+
+    public long getTick() {
+        return layer == null ? 0 : layer.getTick();
+    }
+
+    /**
+     * @param delay in seconds of game time, shortened by boosters
+     * @return the layer tick the delay runs out at
+     */
+    public long getTickAfter(float delay) {
+        return getTick() + Math.max(1, (long) Math.ceil(delay * Const.SIM_TICK_RATE / Math.max(1, speedScale)));
+    }
+
+    public boolean isDormant() {
+        return dormant;
+    }
+
+    public void setDormant(boolean dormant) {
+        this.dormant = dormant;
+    }
+
     public void postUpdate(Bounds dirtyBounds) {
         if (nearbyBooster != null)
             speedScale = nearbyBooster.isBoostActive() ? Booster.BOOST_FACTOR : 1;
@@ -273,6 +339,21 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
         }
     }
 
+    /**
+     * Schedules {@link #applyHandoff()} for the tick barrier, after all layers have been updated.
+     * Structures that hand items or fluids to another layer must only touch it from there.
+     */
+    protected void queueHandoff() {
+        if (!handoffQueued && layer != null) {
+            handoffQueued = true;
+            layer.addHandoff(this);
+        }
+    }
+
+    public void applyHandoff() {
+        handoffQueued = false;
+    }
+
     protected void setDirty() {
         if (layer != null) {
             layer.dirtyBounds.add(this, 0);
@@ -471,6 +552,7 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
 
     public void onClick(Table content) {
         clicked = true;
+        wake();
     }
 
     public boolean isClicked() {
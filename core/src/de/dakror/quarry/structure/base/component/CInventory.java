@@ -33,6 +33,7 @@ import de.dakror.quarry.Quarry;
 import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items.Amount;
+import de.dakror.quarry.structure.base.Direction;
 import de.dakror.quarry.structure.base.Dock;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.logistics.Conveyor;
@@ -48,13 +49,15 @@ public class CInventory extends Component implements IStorage {
     int outputDock;
 
     HashMap<ItemType, Integer> inventory;
-    float pumpOutDelay;
+    // layer tick of the next pump, the structure sleeps until then
+    long nextPump;
     boolean isTubeAtOutput;
+    // looked up again whenever the dirty bounds touch the structure
+    Conveyor outputConveyor;
     float pumpOutSpeed;
 
     public CInventory() {
         inventory = new HashMap<>();
-        pumpOutDelay = Const.DEFAULT_PUMP_OUT_DELAY;
         pumpOutSpeed = Const.DEFAULT_PUMP_OUT_DELAY;
     }
 
@@ -104,18 +107,26 @@ public class CInventory extends Component implements IStorage {
         if (structure.layer.fake && size < Integer.MAX_VALUE) size = Integer.MAX_VALUE;
         if (outputDock == -1) return;
 
-        if (dirtyBounds.touches(structure)) {
+        if (dirtyBounds.touches(structure) || (isTubeAtOutput && outputConveyor == null)) {
             updateOutput();
         }
 
         if (gameSpeed == 0) return;
 
-        pumpOutDelay -= deltaTime * gameSpeed;
-        if (pumpOutDelay <= 0) {
-            pumpOutDelay = pumpOutSpeed;
-            if (!isTubeAtOutput) return;
-            pumpOutItems();
+        if (structure.getTick() < nextPump) {
+            if (count > 0 && isTubeAtOutput) structure.wakeAt(nextPump);
+            return;
         }
+
+        nextPump = structure.getTickAfter(pumpOutSpeed);
+        if (!isTubeAtOutput) return;
+        pumpOutItems();
+        if (count > 0) structure.wakeAt(nextPump);
+    }
+
+    @Override
+    public boolean hasPendingWork() {
+        return outputDock != -1 && count > 0 && isTubeAtOutput && structure.getTick() >= nextPump;
     }
 
     protected void updateOutput() {
@@ -125,6 +136,7 @@ public class CInventory extends Component implements IStorage {
             isTubeAtOutput = s instanceof Conveyor;
             if (s instanceof ElectricConveyorCore && ((ElectricConveyorCore) s).getDirection().isPerpendicular(output.dir))
                 isTubeAtOutput = false;
+            outputConveyor = isTubeAtOutput ? (Conveyor) s : null;
         }
     }
 
@@ -269,7 +281,7 @@ public class CInventory extends Component implements IStorage {
         b.Compound();
         Util.NBTwriteInventory(b, inventory);
         if (outputDock > -1) b
-                .Float("pumpDelay", pumpOutDelay)
+                .Float("pumpDelay", (float) (Math.max(0, nextPump - structure.getTick()) * Const.SIM_TICK_TIME))
                 .Byte("output", (byte) (isTubeAtOutput ? 1 : 0));
         b.End();
     }
@@ -283,18 +295,23 @@ public class CInventory extends Component implements IStorage {
             Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
         }
         count = tag.Int("count", c);
-        if (outputDock > -1) pumpOutDelay = tag.Float("pumpDelay", Const.DEFAULT_PUMP_OUT_DELAY);
+        // layers start counting ticks at 0 when loaded
+        if (outputDock > -1) nextPump = (long) Math.ceil(tag.Float("pumpDelay", Const.DEFAULT_PUMP_OUT_DELAY) * Const.SIM_TICK_RATE);
 
         isTubeAtOutput = tag.Byte("output", (byte) 0) == 1;
     }
 
     protected void pumpOutItems() {
-        Dock output = outputDock == -1 ? null : structure.getDocks()[outputDock];
-        if (output == null) return;
+        Conveyor c = outputConveyor;
+        if (outputDock == -1 || c == null || c.isDestroyed()) return;
+
+        // nothing fits until the belt has moved on, so don't bother trying every item
+        Direction d = structure.getDocks()[outputDock].dir;
+        if (!c.canAcceptFromDock(d)) return;
 
         for (Iterator<Map.Entry<ItemType, Integer>> iter = inventory.entrySet().iterator(); iter.hasNext();) {
             Map.Entry<ItemType, Integer> e = iter.next();
-            if (structure.layer.addItemEntity(e.getKey(), structure, output, structure)) {
+            if (c.acceptFromDock(e.getKey(), d, structure)) {
                 structure.setItemNotifications();
 
                 int v = e.getValue();
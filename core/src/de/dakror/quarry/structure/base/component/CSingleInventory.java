@@ -24,6 +24,7 @@ import de.dakror.quarry.game.Item;
 import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items.Amount;
+import de.dakror.quarry.structure.base.Direction;
 import de.dakror.quarry.structure.base.Dock;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.logistics.Conveyor;
@@ -39,12 +40,15 @@ public class CSingleInventory extends Component implements IStorage {
     ItemType item;
     int count, size;
 
-    float remainingDelay;
+    // layer tick of the next pump, the structure sleeps until then
+    long nextPump;
     float pumpOutDelay;
 
     int outputDock;
 
     boolean hasTubeAtOutput;
+    // looked up again whenever the dirty bounds touch the structure
+    Conveyor outputConveyor;
     boolean outputEnabled;
     boolean draw;
     boolean showFullState;
@@ -63,7 +67,6 @@ public class CSingleInventory extends Component implements IStorage {
         this.outputDock = outputDock;
         this.size = size;
         pumpOutDelay = Const.DEFAULT_PUMP_OUT_DELAY;
-        remainingDelay = pumpOutDelay;
 
         draw = true;
         this.outputEnabled = outputEnabled;
@@ -82,7 +85,6 @@ public class CSingleInventory extends Component implements IStorage {
 
     public CSingleInventory setPumpOutDelay(float pumpOutDelay) {
         this.pumpOutDelay = pumpOutDelay;
-        remainingDelay = pumpOutDelay;
         return this;
     }
 
@@ -132,29 +134,39 @@ public class CSingleInventory extends Component implements IStorage {
 
         if (outputDock == -1) return;
 
-        if (dirtyBounds.touches(structure)) {
+        if (dirtyBounds.touches(structure) || (hasTubeAtOutput && outputConveyor == null)) {
             updateOutput();
         }
 
         if (!outputEnabled || item == null || gameSpeed == 0) return;
 
-        remainingDelay -= deltaTime * gameSpeed;
-        if (remainingDelay <= 0) {
-            Dock output = structure.getDocks()[outputDock];
-            remainingDelay = pumpOutDelay;
-            if (!hasTubeAtOutput || item == null) return;
+        if (structure.getTick() < nextPump) {
+            if (hasTubeAtOutput) structure.wakeAt(nextPump);
+            return;
+        }
+
+        Direction d = structure.getDocks()[outputDock].dir;
+        nextPump = structure.getTickAfter(pumpOutDelay);
+        if (!hasTubeAtOutput || item == null) return;
 
-            if (structure.layer.addItemEntity(item, structure, output, structure)) {
-                count--;
+        Conveyor c = outputConveyor;
+        if (c != null && !c.isDestroyed() && c.canAcceptFromDock(d) && c.acceptFromDock(item, d, structure)) {
+            count--;
 
-                if (pumpOutCallback != null) pumpOutCallback.call(item);
+            if (pumpOutCallback != null) pumpOutCallback.call(item);
 
-                if (count <= 0) {
-                    item = null;
-                    count = 0;
-                }
+            if (count <= 0) {
+                item = null;
+                count = 0;
             }
         }
+        if (item != null) structure.wakeAt(nextPump);
+    }
+
+    @Override
+    public boolean hasPendingWork() {
+        if (count <= 0) return item != null;
+        return outputDock != -1 && outputEnabled && hasTubeAtOutput && structure.getTick() >= nextPump;
     }
 
     public boolean isOutputEnabled() {
@@ -163,6 +175,7 @@ public class CSingleInventory extends Component implements IStorage {
 
     public void setOutputEnabled(boolean outputEnabled) {
         this.outputEnabled = outputEnabled;
+        if (structure != null) structure.wake();
     }
 
     protected void updateOutput() {
@@ -175,6 +188,7 @@ public class CSingleInventory extends Component implements IStorage {
             hasTubeAtOutput = s instanceof Conveyor;
             if (s instanceof ElectricConveyorCore && ((ElectricConveyorCore) s).getDirection().isPerpendicular(output.dir))
                 hasTubeAtOutput = false;
+            outputConveyor = hasTubeAtOutput ? (Conveyor) s : null;
         }
     }
 
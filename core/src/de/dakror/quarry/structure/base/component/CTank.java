@@ -38,7 +38,8 @@ public class CTank extends Component implements IStorage {
 
     int maxOutput;
 
-    float remainingDelay;
+    // layer tick of the next pump, the structure sleeps until then
+    long nextPump;
     float pumpOutDelay;
 
     int outputDock;
@@ -60,7 +61,6 @@ public class CTank extends Component implements IStorage {
         this.outputDock = outputDock;
         this.size = size;
         pumpOutDelay = Const.DEFAULT_PUMP_OUT_DELAY;
-        remainingDelay = pumpOutDelay;
 
         maxOutput = Const.DEFAULT_PUMP_OUT_MAX_FLUID;
         draw = true;
@@ -82,7 +82,6 @@ public class CTank extends Component implements IStorage {
 
     public CTank setPumpOutDelay(float pumpOutDelay) {
         this.pumpOutDelay = pumpOutDelay;
-        remainingDelay = pumpOutDelay;
         return this;
     }
 
@@ -123,7 +122,7 @@ public class CTank extends Component implements IStorage {
         if (count <= 0) {
             fluid = null;
             count = 0;
-            remainingDelay = 0;
+            nextPump = 0;
         }
 
         if (outputDock == -1) return;
@@ -134,15 +133,25 @@ public class CTank extends Component implements IStorage {
 
         if (!outputEnabled || fluid == null || gameSpeed == 0) return;
 
-        remainingDelay -= deltaTime * gameSpeed;
-        if (remainingDelay <= 0) {
-            remainingDelay = pumpOutDelay;
-            if (outputTube == null || fluid == null) return;
+        if (structure.getTick() < nextPump) {
+            if (outputTube != null) structure.wakeAt(nextPump);
+            return;
+        }
 
-            int dif = Math.min(maxOutput, count);
+        nextPump = structure.getTickAfter(pumpOutDelay);
+        if (outputTube == null || fluid == null) return;
 
-            count = count - dif + outputTube.acceptFluid(fluid, dif, structure);
-        }
+        int dif = Math.min(maxOutput, count);
+
+        count = count - dif + outputTube.acceptFluid(fluid, dif, structure);
+        if (count > 0) structure.wakeAt(nextPump);
+    }
+
+    @Override
+    public boolean hasPendingWork() {
+        // an emptied tank still has to reset its fluid
+        if (count <= 0) return fluid != null;
+        return outputDock != -1 && outputEnabled && outputTube != null && structure.getTick() >= nextPump;
     }
 
     public boolean hasOutputTube() {
@@ -155,6 +164,7 @@ public class CTank extends Component implements IStorage {
 
     public void setOutputEnabled(boolean outputEnabled) {
         this.outputEnabled = outputEnabled;
+        if (structure != null) structure.wake();
     }
 
     protected void updateOutput() {
@@ -36,6 +36,13 @@ public abstract class Component {
 
     public abstract void update(double deltaTime, int gameSpeed, Bounds dirtyBounds);
 
+    /**
+     * Whether {@link #update} still has something to do, lets idle structures go dormant
+     */
+    public boolean hasPendingWork() {
+        return true;
+    }
+
     public void postLoad() {}
 
     public void drawFrame(SpriteRenderer spriter, ShapeRenderer shaper) {}
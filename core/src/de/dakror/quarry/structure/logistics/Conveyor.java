@@ -16,12 +16,15 @@
 
 package de.dakror.quarry.structure.logistics;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.Array;
 
 import de.dakror.common.libgdx.PlatformInterface;
 import de.dakror.common.libgdx.io.NBT.Builder;
@@ -32,9 +35,10 @@ import de.dakror.common.libgdx.io.NBT.TagType;
 import de.dakror.common.libgdx.render.SpriteRenderer;
 import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Chunk;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
-import de.dakror.quarry.game.ItemEntity;
+import de.dakror.quarry.game.ItemStore;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Direction;
@@ -49,6 +53,7 @@ import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.logistics.Conveyor.ConveyorSchema;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.CopyRegionHelper;
+import de.dakror.quarry.util.ItemBatch;
 import de.dakror.quarry.util.Sfx;
 import de.dakror.quarry.util.SpriterDelegateBatch;
 
@@ -98,7 +103,18 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
      *        S:6
      */
 
-    ItemEntity[] items = new ItemEntity[Const.ITEMS_PER_CONVEYOR * 2];
+    // handles into the item store of the layer, only written by the owning chunk thread
+    int[] items = emptyItems();
+
+    // items handed over by neighbors, by entry edge (see #edgeOf), taken in by #drainInbound
+    final AtomicIntegerArray inbound = emptyInbound();
+
+    // neighbors to update once our own lock is released, bits by index in #structures
+    int pendingChain;
+    int worklistStamp;
+
+    // of the chunk, looked up on first use
+    ConveyorStats stats;
 
     int itemCount = 0;
 
@@ -110,6 +126,14 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     // 0 from, 1 side1, 2 side2, 3 to
     int[] structs;
 
+    // get put into the item store in postLoad
+    Array<CompoundTag> itemTags;
+
+    // set while this conveyor is part of a straight run that is simulated as one
+    volatile TransportLine line;
+    int lineIndex;
+    int lineStamp;
+
     public Conveyor(int x, int y) {
         super(x, y, classSchema);
         dir = Direction.East;
@@ -125,6 +149,40 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         dir = direction;
     }
 
+    static int[] emptyItems() {
+        int[] items = new int[Const.ITEMS_PER_CONVEYOR * 2];
+        Arrays.fill(items, ItemStore.NONE);
+        return items;
+    }
+
+    static AtomicIntegerArray emptyInbound() {
+        AtomicIntegerArray inbound = new AtomicIntegerArray(4);
+        for (int i = 0; i < 4; i++)
+            inbound.set(i, ItemStore.NONE);
+        return inbound;
+    }
+
+    static int edgeOf(int slot) {
+        if (slot == 0) return 0;
+        if (slot == Const.ITEMS_PER_CONVEYOR - 1) return 1;
+        if (slot == Const.ITEMS_PER_CONVEYOR) return 2;
+        if (slot == Const.ITEMS_PER_CONVEYOR * 2 - 1) return 3;
+        return -1;
+    }
+
+    static int edgeSlot(int edge) {
+        switch (edge) {
+            case 0:
+                return 0;
+            case 1:
+                return Const.ITEMS_PER_CONVEYOR - 1;
+            case 2:
+                return Const.ITEMS_PER_CONVEYOR;
+            default:
+                return Const.ITEMS_PER_CONVEYOR * 2 - 1;
+        }
+    }
+
     public Structure<?> getStructureInDirection(Direction dir) {
         if (dir == this.dir.inv()) return structures[0];
         else if (dir == this.dir.next()) return structures[1];
@@ -133,17 +191,15 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         else return null;
     }
 
-    public boolean moveItem(ItemEntity e, Direction dir, int deltaSlot, boolean chain) {
-        //        System.out.println("move " + e.x + ":" + e.y + "-" + e.slot + ": " + e.item);
+    public boolean moveItem(int e, Direction dir, int deltaSlot, boolean chain) {
+        ItemStore st = layer.itemStore;
         if (dir == null) {
             synchronized (itemLock) {
-                if (isItemSlotFree(e.slot + deltaSlot)) {
-                    items[e.slot] = null;
-                    items[e.slot + deltaSlot] = e;
-                    e.lastSlot = e.slot;
-                    e.slot += deltaSlot;
-                    e.x = x;
-                    e.y = y;
+                int slot = st.getSlot(e);
+                if (isItemSlotFree(slot + deltaSlot)) {
+                    items[slot] = ItemStore.NONE;
+                    items[slot + deltaSlot] = e;
+                    st.moveTo(e, slot + deltaSlot);
                     itemChanges = true;
                     notifyNeighbors(chain);
 
@@ -155,28 +211,17 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         } else {
             Structure<?> s = getStructureInDirection(dir);
             if (s instanceof Conveyor) {
-                Conveyor c = (Conveyor) s;
-
                 synchronized (itemLock) {
-                    synchronized (c.itemLock) {
-                        if (c.isItemSlotFree(e.slot + deltaSlot)) {
-                            items[e.slot] = null;
-                            c.items[e.slot + deltaSlot] = e;
-                            e.lastSlot = e.slot;
-                            e.slot += deltaSlot;
-                            e.x = c.x;
-                            e.y = c.y;
-                            itemCount--;
-                            c.itemCount++;
-
-                            itemChanges = true;
-                            c.itemChanges = true;
-                            notifyNeighbors(chain);
+                    int slot = st.getSlot(e);
+                    if (((Conveyor) s).handoff(e, slot + deltaSlot)) {
+                        items[slot] = ItemStore.NONE;
+                        itemCount--;
+                        itemChanges = true;
+                        notifyNeighbors(chain);
 
-                            return true;
-                        } else {
-                            return false;
-                        }
+                        return true;
+                    } else {
+                        return false;
                     }
                 }
             } else {
@@ -185,11 +230,69 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         }
     }
 
+    /**
+     * Hands an item over from a neighbor without taking any lock of this conveyor.
+     * The item is only taken in on the next item update of this conveyor, so every conveyor
+     * is the only one writing its own items.
+     *
+     * @param slot the entry slot, has to be at an edge
+     */
+    boolean handoff(int e, int slot) {
+        TransportLine l = line;
+        if (l != null) return l.handoff(this, e, slot);
+
+        int edge = edgeOf(slot);
+        if (edge < 0 || !isItemSlotFree(slot)) return false;
+        if (!inbound.compareAndSet(edge, ItemStore.NONE, e)) return false;
+
+        layer.itemStore.moveTo(e, slot);
+        itemChanges = true;
+        wake();
+        return true;
+    }
+
+    /**
+     * Has to be called with the item lock held.
+     */
+    protected void drainInbound() {
+        ItemStore st = layer.itemStore;
+        for (int edge = 0; edge < 4; edge++) {
+            int e = inbound.get(edge);
+            if (e == ItemStore.NONE) continue;
+
+            int slot = edgeSlot(edge);
+            if (items[slot] != ItemStore.NONE) continue;
+
+            inbound.set(edge, ItemStore.NONE);
+            items[slot] = e;
+
+            // the item still points the way it came in
+            ItemType item = st.getItem(e);
+            Direction d = getNextDirection(item, st.getDir(e), st.getZ(e), slot);
+            st.setDir(e, d);
+            st.setZ(e, getItemZ(item, d));
+            itemCount++;
+            itemChanges = true;
+        }
+    }
+
+    boolean hasInbound() {
+        for (int edge = 0; edge < 4; edge++)
+            if (inbound.get(edge) != ItemStore.NONE) return true;
+        return false;
+    }
+
     public boolean isItemSlotFree(int slot) {
+        TransportLine l = line;
+        if (l != null) return l.isFree(this, slot);
+
+        int edge = edgeOf(slot);
+        if (edge >= 0 && inbound.get(edge) != ItemStore.NONE) return false;
+
         if (slot == Const.ITEMS_PER_CONVEYOR / 2 || slot == Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
-            return items[Const.ITEMS_PER_CONVEYOR / 2] == null && items[Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2] == null;
+            return items[Const.ITEMS_PER_CONVEYOR / 2] == ItemStore.NONE && items[Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2] == ItemStore.NONE;
         } else {
-            return items[slot] == null;
+            return items[slot] == ItemStore.NONE;
         }
     }
 
@@ -207,169 +310,221 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     }
 
     public void updateItems(double deltaTime, int gameSpeed, boolean chain) {
+        TransportLine l = line;
+        if (l != null) {
+            // the head moves the whole line once per tick
+            if (l.getHead() == this) l.update(gameSpeed);
+            return;
+        }
+
         updateItems(deltaTime, gameSpeed, touches, chain);
     }
 
-    protected void updateItemWithin(ItemEntity e, boolean chain) {
-        if (e.dir == Direction.South || e.dir == Direction.North) {
-            if (e.slot < Const.ITEMS_PER_CONVEYOR) {
-                if (moveItem(e, null, e.dir.dy, chain)) {
-                    e.interp--;
+    @Override
+    public boolean hasPendingWork() {
+        TransportLine l = line;
+        if (l != null) return l.getHead() == this && l.hasPendingWork();
+        return itemCount > 0 || hasInbound();
+    }
+
+    protected void updateItemWithin(int e, boolean chain) {
+        ItemStore st = layer.itemStore;
+        Direction dir = st.getDir(e);
+        int slot = st.getSlot(e);
+        if (dir == Direction.South || dir == Direction.North) {
+            if (slot < Const.ITEMS_PER_CONVEYOR) {
+                if (moveItem(e, null, dir.dy, chain)) {
+                    st.addInterp(e, -1);
                 }
-            } else if (e.slot != Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
-                if (moveItem(e, null, e.slot > Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2 ? -1 : 1, chain)) {
-                    e.interp--;
+            } else if (slot != Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
+                if (moveItem(e, null, slot > Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2 ? -1 : 1, chain)) {
+                    st.addInterp(e, -1);
                 }
-            } else if (moveItem(e, null, -Const.ITEMS_PER_CONVEYOR + e.dir.dy, chain)) {
-                e.interp--;
+            } else if (moveItem(e, null, -Const.ITEMS_PER_CONVEYOR + dir.dy, chain)) {
+                st.addInterp(e, -1);
             }
-        } else if (e.dir == Direction.West || e.dir == Direction.East) {
-            if (e.slot >= Const.ITEMS_PER_CONVEYOR) {
-                if (moveItem(e, null, e.dir.dx, chain)) {
-                    e.interp--;
+        } else if (dir == Direction.West || dir == Direction.East) {
+            if (slot >= Const.ITEMS_PER_CONVEYOR) {
+                if (moveItem(e, null, dir.dx, chain)) {
+                    st.addInterp(e, -1);
                 }
-            } else if (e.slot != Const.ITEMS_PER_CONVEYOR / 2) {
-                if (moveItem(e, null, e.slot > Const.ITEMS_PER_CONVEYOR / 2 ? -1 : 1, chain)) {
-                    e.interp--;
+            } else if (slot != Const.ITEMS_PER_CONVEYOR / 2) {
+                if (moveItem(e, null, slot > Const.ITEMS_PER_CONVEYOR / 2 ? -1 : 1, chain)) {
+                    st.addInterp(e, -1);
                 }
-            } else if (moveItem(e, null, Const.ITEMS_PER_CONVEYOR + e.dir.dx, chain)) {
-                e.interp--;
+            } else if (moveItem(e, null, Const.ITEMS_PER_CONVEYOR + dir.dx, chain)) {
+                st.addInterp(e, -1);
             }
         }
     }
 
     public void updateItems(double deltaTime, int gameSpeed, boolean touch, boolean chain) {
+        if (line != null) return;
+
         if (!itemChanges && !touch && !notification) {
             return;
         }
 
+        ItemStore st = layer.itemStore;
+
         itemChanges = false;
+        int out = 0;
+        boolean stuck = false;
         // update items
         synchronized (itemLock) {
+            drainInbound();
+
             for (int i = 0; i < items.length; i++) {
-                ItemEntity e = items[i];
+                int e = items[i];
+
+                if (e == ItemStore.NONE) continue;
 
-                if (e == null) continue;
+                ItemType item = st.getItem(e);
 
                 // why does this even occur
-                if (e.item == null) {
+                if (item == null) {
                     System.out.println("Deleting nonsense item");
-                    items[i] = null;
+                    items[i] = ItemStore.NONE;
                     itemChanges = true;
-                    Pools.free(e);
+                    st.free(e);
                     continue;
                 }
-                if (e.dir == null && !notification && !touch) {
+
+                Direction dir = st.getDir(e);
+                if (dir == null && !notification && !touch) {
                     continue;
                 }
 
                 if (touch || notification) {
-                    Direction nd = getCurrentDirection(e.item, e.dir, e.z, e.slot);
-                    float nz = getItemZ(e.item, nd);
-                    if (nd != e.dir || nz != e.z) {
+                    float z = st.getZ(e);
+                    Direction nd = getCurrentDirection(item, dir, z, i);
+                    float nz = getItemZ(item, nd);
+                    if (nd != dir || nz != z) {
                         itemChanges = true;
-                        e.dir = nd;
-                        e.z = nz;
+                        st.setDir(e, nd);
+                        st.setZ(e, nz);
+                        dir = nd;
                     }
                 }
 
-                if (e.interp >= 1.0) {
+                if (st.getInterp(e) >= 1.0) {
                     boolean atEdge = false;
 
-                    if (e.slot == 0 && e.dir == Direction.South) {
+                    if (i == 0 && dir == Direction.South) {
                         atEdge = true;
-                    } else if (e.slot == Const.ITEMS_PER_CONVEYOR - 1 && e.dir == Direction.North) {
+                    } else if (i == Const.ITEMS_PER_CONVEYOR - 1 && dir == Direction.North) {
                         atEdge = true;
-                    } else if (e.slot == Const.ITEMS_PER_CONVEYOR && e.dir == Direction.West) {
+                    } else if (i == Const.ITEMS_PER_CONVEYOR && dir == Direction.West) {
                         atEdge = true;
-                    } else if (e.slot == Const.ITEMS_PER_CONVEYOR * 2 - 1 && e.dir == Direction.East) {
+                    } else if (i == Const.ITEMS_PER_CONVEYOR * 2 - 1 && dir == Direction.East) {
                         atEdge = true;
                     } else {
                         updateItemWithin(e, chain);
+                        dir = st.getDir(e);
                     }
 
-                    if (atEdge || e.dir == null) {
+                    if (atEdge || dir == null) {
                         Structure<?> s = this;
-                        if (e.dir != null) {
-                            s = getStructureInDirection(e.dir);
+                        if (dir != null) {
+                            s = getStructureInDirection(dir);
                         }
 
                         boolean blocked = false;
 
-                        if (atEdge && e.dir != null) {
-                            if (e.slot == 0) {
-                                if (moveItem(e, e.dir, Const.ITEMS_PER_CONVEYOR - 1, chain)) {
-                                    e.interp--;
-                                } else {
-                                    blocked = true;
-                                }
-                            } else if (e.slot == Const.ITEMS_PER_CONVEYOR - 1) {
-                                if (moveItem(e, e.dir, -(Const.ITEMS_PER_CONVEYOR - 1), chain)) {
-                                    e.interp--;
-                                } else {
-                                    blocked = true;
-                                }
-                            } else if (e.slot == Const.ITEMS_PER_CONVEYOR) {
-                                if (moveItem(e, e.dir, Const.ITEMS_PER_CONVEYOR - 1, chain)) {
-                                    e.interp--;
-                                } else {
-                                    blocked = true;
-                                }
-                            } else if (e.slot == Const.ITEMS_PER_CONVEYOR * 2 - 1) {
-                                if (moveItem(e, e.dir, -(Const.ITEMS_PER_CONVEYOR - 1), chain)) {
-                                    e.interp--;
-                                } else {
-                                    blocked = true;
-                                }
+                        if (atEdge && dir != null) {
+                            int delta = i == 0 || i == Const.ITEMS_PER_CONVEYOR ? Const.ITEMS_PER_CONVEYOR - 1 : -(Const.ITEMS_PER_CONVEYOR - 1);
+                            if (moveItem(e, dir, delta, chain)) {
+                                st.addInterp(e, -1);
+                                out++;
+                            } else {
+                                blocked = true;
+                                stuck = true;
                             }
                         }
 
                         if (s instanceof Conveyor) {
-                            if (!blocked) {
-                                //                                System.out.println(x + ":" + y + "-" + i + " " + "!blocked " + e.x + ":" + e.y + "-" + e.slot + ": " + e.item);
-
-                                e.dir = ((Conveyor) s).getNextDirection(e.item, e.dir, e.z, e.slot);
-                                e.z = ((Conveyor) s).getItemZ(e.item, e.dir);
+                            // handed over items get their direction from the receiver
+                            if (s == this) {
+                                Direction nd = getNextDirection(item, dir, st.getZ(e), i);
+                                st.setDir(e, nd);
+                                st.setZ(e, getItemZ(item, nd));
                             }
-                        } else if (s != null && s.canAccept(e.item, e.x, e.y, e.dir) && s.acceptItem(e.item, e.src, e.dir)) {
-
-                            //                            System.out.println(x + ":" + y + "-" + i + " " + "consume " + e.x + ":" + e.y + "-" + e.slot + ": " + e.item);
-
-                            items[e.slot] = null;
-                            Pools.free(e);
+                        } else if (s != null && s.canAccept(item, x, y, dir) && s.acceptItem(item, st.getSrc(e), dir)) {
+                            items[i] = ItemStore.NONE;
+                            st.free(e);
                             itemCount--;
                             itemChanges = true;
                             notifyNeighbors(chain);
+                            out++;
                             continue;
                         } else {
-                            e.dir = null;
+                            st.setDir(e, null);
+                            stuck = true;
                         }
                     }
                 } else {
-                    e.interp += deltaTime * Const.ITEM_SPEED * gameSpeed;
+                    st.addInterp(e, (float) (deltaTime * Const.ITEM_SPEED * gameSpeed));
                     itemChanges = true;
                 }
             }
         }
 
+        if (out > 0 || stuck) recordStats(out, stuck);
+
         //notification = false;
     }
 
+    /**
+     * Counts towards the belt heatmap, see {@link ConveyorStats}.
+     */
+    void recordStats(int moved, boolean stuck) {
+        ConveyorStats s = stats;
+        if (s == null) {
+            Chunk c = layer.getChunk(x, y);
+            if (c == null) return;
+            stats = s = c.getConveyorStats();
+        }
+        s.record(ConveyorStats.tile(x, y), moved, stuck);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (itemCount > 0) {
-            for (ItemEntity e : items) {
-                if (e != null && e.src != null) {
-                    if (!e.src.isDestroyed())
-                        e.src.putBack(e.item, 1);
-                    items[e.slot] = null;
-                    Pools.free(e);
+        TransportLine l = line;
+        if (l != null) l.dissolve();
+
+        // don't leave the tile marked as blocked
+        recordStats(0, false);
+
+        ItemStore st = layer.itemStore;
+        synchronized (itemLock) {
+            drainInbound();
+
+            for (int edge = 0; edge < 4; edge++) {
+                // anything that did not fit any more
+                int e = inbound.getAndSet(edge, ItemStore.NONE);
+                if (e != ItemStore.NONE) destroyItem(st, e);
+            }
+
+            if (itemCount > 0) {
+                for (int i = 0; i < items.length; i++) {
+                    int e = items[i];
+                    if (e == ItemStore.NONE) continue;
+
+                    items[i] = ItemStore.NONE;
+                    destroyItem(st, e);
                 }
             }
         }
     }
 
+    void destroyItem(ItemStore st, int e) {
+        Structure<?> src = st.getSrc(e);
+        if (src != null && !src.isDestroyed())
+            src.putBack(st.getItem(e), 1);
+        st.free(e);
+    }
+
     @Override
     public void draw(SpriteRenderer spriter) {
         int flag = 0;
@@ -418,19 +573,25 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
 
     protected void notifyNeighbors(boolean chain) {
         if (structures[0] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(dir))) {
-            ((Conveyor) structures[0]).itemChanges = true;
-            if (chain) ((Conveyor) structures[0]).updateItems(0, 1, true, false);
+            notifyNeighbor(0, chain);
         }
         if (structures[1] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(dir.prev()))) {
-            ((Conveyor) structures[1]).itemChanges = true;
-            if (chain) ((Conveyor) structures[1]).updateItems(0, 1, true, false);
+            notifyNeighbor(1, chain);
         }
         if (structures[2] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(dir.next()))) {
-            ((Conveyor) structures[2]).itemChanges = true;
-            if (chain) ((Conveyor) structures[2]).updateItems(0, 1, true, false);
+            notifyNeighbor(2, chain);
         }
     }
 
+    /**
+     * Lets the neighbor retry moving items in, chained updates are picked up
+     * by the {@link ConveyorWorklist} of the chunk.
+     */
+    protected void notifyNeighbor(int index, boolean chain) {
+        ((Conveyor) structures[index]).itemChanges = true;
+        if (chain) pendingChain |= 1 << index;
+    }
+
     static TextureRegion caret;
 
     @Override
@@ -443,102 +604,138 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
             spriter.add(caret, (x + 0.5f) * Const.TILE_SIZE - 6, (y + 0.5f) * Const.TILE_SIZE - 2.5f, Const.Z_STATES, 6, 2.5f, 12, 5, 1, 1, dir.rot + 90);
         }
 
-        if (itemCount > 0)
-            drawItems(spriter);
+        // the items themselves are batched by the chunk in the structure pass, see Chunk#drawItems
+        if (Game.DRAW_DEBUG && layer != null) {
+            TransportLine l = line;
+            if (l != null) {
+                synchronized (l) {
+                    l.materialize();
+                    drawItemDebug(shaper);
+                }
+            } else {
+                drawItemDebug(shaper);
+            }
+        }
+    }
 
-        if (Game.DRAW_DEBUG) {
-            synchronized (itemLock) {
-                shaper.set(ShapeType.Line);
+    protected void drawItemDebug(ShapeRenderer shaper) {
+        ItemStore st = layer.itemStore;
+        synchronized (itemLock) {
+            shaper.set(ShapeType.Line);
 
-                for (ItemEntity e : items) {
-                    if (e == null) continue;
+            for (int e : items) {
+                if (e == ItemStore.NONE) continue;
 
-                    shaper.setColor(e.z == Const.Z_ITEMS ? Color.GREEN : Color.YELLOW);
-                    float ix = 0, iy = 0;
-                    if (e.slot < Const.ITEMS_PER_CONVEYOR) {
-                        ix = (e.x + 0.5f) * Const.TILE_SIZE - k / 2;
-                        iy = (e.y) * Const.TILE_SIZE + (e.slot) * k;
-                    } else {
-                        ix = (e.x) * Const.TILE_SIZE + (e.slot - Const.ITEMS_PER_CONVEYOR) * k;
-                        iy = (e.y + 0.5f) * Const.TILE_SIZE - k / 2;
-                    }
+                int slot = st.getSlot(e);
+                Direction dir = st.getDir(e);
+                shaper.setColor(st.getZ(e) == Const.Z_ITEMS ? Color.GREEN : Color.YELLOW);
+                float ix = 0, iy = 0;
+                if (slot < Const.ITEMS_PER_CONVEYOR) {
+                    ix = (x + 0.5f) * Const.TILE_SIZE - k / 2;
+                    iy = (y) * Const.TILE_SIZE + (slot) * k;
+                } else {
+                    ix = (x) * Const.TILE_SIZE + (slot - Const.ITEMS_PER_CONVEYOR) * k;
+                    iy = (y + 0.5f) * Const.TILE_SIZE - k / 2;
+                }
 
-                    if (e.slot == Const.ITEMS_PER_CONVEYOR / 2)
-                        shaper.circle(ix + k / 2, iy + k / 2, k / 2, 16);
-                    else shaper.rect(ix + 1, iy + 1, k - 2, k - 2);
+                if (slot == Const.ITEMS_PER_CONVEYOR / 2)
+                    shaper.circle(ix + k / 2, iy + k / 2, k / 2, 16);
+                else shaper.rect(ix + 1, iy + 1, k - 2, k - 2);
 
-                    if (e.dir == null) {
-                        shaper.x(ix + k / 2, iy + k / 2, k / 4);
-                    } else {
-                        shaper.line(ix + k / 2, iy + k / 2, ix + k / 2 + k / 3 * 2 * e.dir.dx, iy + k / 2 + k / 3 * 2 * e.dir.dy);
-                    }
+                if (dir == null) {
+                    shaper.x(ix + k / 2, iy + k / 2, k / 4);
+                } else {
+                    shaper.line(ix + k / 2, iy + k / 2, ix + k / 2 + k / 3 * 2 * dir.dx, iy + k / 2 + k / 3 * 2 * dir.dy);
                 }
             }
         }
     }
 
-    public void drawItems(SpriteRenderer spriter) {
+    /**
+     * Called by the chunk for all its conveyors in one pass.
+     */
+    public void drawItems(ItemBatch batch) {
+        TransportLine l = line;
+        if (l != null) {
+            synchronized (l) {
+                l.materialize();
+                drawItemsLocked(batch);
+            }
+        } else {
+            drawItemsLocked(batch);
+        }
+    }
+
+    void drawItemsLocked(ItemBatch batch) {
+        if (itemCount == 0) return;
+
+        ItemStore st = layer.itemStore;
         synchronized (itemLock) {
-            for (ItemEntity e : items) {
-                if (e == null) continue;
+            for (int e : items) {
+                if (e == ItemStore.NONE) continue;
+
+                ItemType item = st.getItem(e);
+                if (item == null) continue;
+
+                int slot = st.getSlot(e);
+                int lastSlot = st.getLastSlot(e);
                 float ix = 0, iy = 0;
 
-                Direction dir = null;
-                if (e.dir != null && e.lastSlot > -1) {
-                    dir = e.dir;
-                    int x = e.x;
-                    int y = e.y;
+                Direction dir = st.getDir(e);
+                if (dir != null && lastSlot > -1) {
+                    int x = this.x;
+                    int y = this.y;
 
-                    if (Math.abs(e.lastSlot - e.slot) > 1) {
-                        if (e.lastSlot == 0 && e.slot == Const.ITEMS_PER_CONVEYOR - 1) {
+                    if (Math.abs(lastSlot - slot) > 1) {
+                        if (lastSlot == 0 && slot == Const.ITEMS_PER_CONVEYOR - 1) {
                             y++;
                             dir = Direction.South;
-                        } else if (e.lastSlot == Const.ITEMS_PER_CONVEYOR - 1 && e.slot == 0) {
+                        } else if (lastSlot == Const.ITEMS_PER_CONVEYOR - 1 && slot == 0) {
                             y--;
                             dir = Direction.North;
-                        } else if (e.lastSlot == Const.ITEMS_PER_CONVEYOR * 2 - 1 && e.slot == Const.ITEMS_PER_CONVEYOR) {
+                        } else if (lastSlot == Const.ITEMS_PER_CONVEYOR * 2 - 1 && slot == Const.ITEMS_PER_CONVEYOR) {
                             x--;
                             dir = Direction.East;
-                        } else if (e.lastSlot == Const.ITEMS_PER_CONVEYOR && e.slot == Const.ITEMS_PER_CONVEYOR * 2 - 1) {
+                        } else if (lastSlot == Const.ITEMS_PER_CONVEYOR && slot == Const.ITEMS_PER_CONVEYOR * 2 - 1) {
                             x++;
                             dir = Direction.West;
                         }
-                    } else if ((dir == Direction.South || dir == Direction.North) && e.lastSlot >= Const.ITEMS_PER_CONVEYOR && e.lastSlot != Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
-                        dir = e.lastSlot > Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2 ? Direction.West : Direction.East;
-                    } else if ((dir == Direction.West || dir == Direction.East) && e.lastSlot < Const.ITEMS_PER_CONVEYOR && e.lastSlot != Const.ITEMS_PER_CONVEYOR / 2) {
-                        dir = e.lastSlot > Const.ITEMS_PER_CONVEYOR / 2 ? Direction.South : Direction.North;
+                    } else if ((dir == Direction.South || dir == Direction.North) && lastSlot >= Const.ITEMS_PER_CONVEYOR && lastSlot != Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
+                        dir = lastSlot > Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2 ? Direction.West : Direction.East;
+                    } else if ((dir == Direction.West || dir == Direction.East) && lastSlot < Const.ITEMS_PER_CONVEYOR && lastSlot != Const.ITEMS_PER_CONVEYOR / 2) {
+                        dir = lastSlot > Const.ITEMS_PER_CONVEYOR / 2 ? Direction.South : Direction.North;
                     }
 
-                    if (e.lastSlot < Const.ITEMS_PER_CONVEYOR) {
+                    if (lastSlot < Const.ITEMS_PER_CONVEYOR) {
                         ix = (x + 0.5f) * Const.TILE_SIZE - 12;
-                        iy = (y) * Const.TILE_SIZE + (e.lastSlot) * Conveyor.k - (24 - Conveyor.k) / 2;
+                        iy = (y) * Const.TILE_SIZE + (lastSlot) * Conveyor.k - (24 - Conveyor.k) / 2;
                     } else {
-                        ix = (x) * Const.TILE_SIZE + (e.lastSlot - Const.ITEMS_PER_CONVEYOR) * Conveyor.k - (24 - Conveyor.k) / 2;
+                        ix = (x) * Const.TILE_SIZE + (lastSlot - Const.ITEMS_PER_CONVEYOR) * Conveyor.k - (24 - Conveyor.k) / 2;
                         iy = (y + 0.5f) * Const.TILE_SIZE - 12;
                     }
 
                     //                    float prog = Math.min(1, e.interp);
-                    double prog = MathUtils.clamp(e.interp, 0, 1);
+                    float prog = MathUtils.clamp(st.getInterp(e), 0, 1);
 
                     ix += Conveyor.k * prog * dir.dx;
                     iy += Conveyor.k * prog * dir.dy;
                 } else {
-                    if (e.slot < Const.ITEMS_PER_CONVEYOR) {
-                        ix = (e.x + 0.5f) * Const.TILE_SIZE - 12;
-                        iy = (e.y) * Const.TILE_SIZE + (e.slot) * Conveyor.k - (24 - Conveyor.k) / 2;
+                    if (slot < Const.ITEMS_PER_CONVEYOR) {
+                        ix = (x + 0.5f) * Const.TILE_SIZE - 12;
+                        iy = (y) * Const.TILE_SIZE + (slot) * Conveyor.k - (24 - Conveyor.k) / 2;
                     } else {
-                        ix = (e.x) * Const.TILE_SIZE + (e.slot - Const.ITEMS_PER_CONVEYOR) * Conveyor.k - (24 - Conveyor.k) / 2;
-                        iy = (e.y + 0.5f) * Const.TILE_SIZE - 12;
+                        ix = (x) * Const.TILE_SIZE + (slot - Const.ITEMS_PER_CONVEYOR) * Conveyor.k - (24 - Conveyor.k) / 2;
+                        iy = (y + 0.5f) * Const.TILE_SIZE - 12;
                     }
                 }
 
-                float newZ = e.z + ix / (layer.width * Const.TILE_SIZE) - iy / (layer.height * Const.TILE_SIZE);
+                float newZ = st.getZ(e) + ix / (layer.width * Const.TILE_SIZE) - iy / (layer.height * Const.TILE_SIZE);
 
-                if (e.item.stackable != null) {
-                    spriter.add(e.item.stackable.icon, ix + 5, iy + 5, newZ, 14, 14);
+                if (item.stackable != null) {
+                    batch.add(item.stackable.icon, ix + 5, iy + 5, newZ, 14, 14);
                 }
 
-                spriter.add(e.item.icon, ix, iy, newZ, 24, 24);
+                batch.add(item.icon, ix, iy, newZ, 24, 24);
             }
         }
     }
@@ -552,6 +749,7 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
 
     public void setItemNotification() {
         notification = true;
+        wake();
     }
 
     protected Structure<?> getNeighbor(Direction dir) {
@@ -655,6 +853,9 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
 
     @Override
     public void setRotation(Direction direction) {
+        TransportLine l = line;
+        if (l != null) l.dissolve();
+
         dir = direction;
 
         if (layer == null) updateStructures();
@@ -675,32 +876,78 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     }
 
     public int getItemCount() {
-        return itemCount;
+        TransportLine l = line;
+        // the item waiting at the tail is already gone from its feeder
+        if (l != null) return l.getHead() == this ? l.size() + (l.inbound.get() != ItemStore.NONE ? 1 : 0) : 0;
+
+        int count = itemCount;
+        for (int edge = 0; edge < 4; edge++)
+            if (inbound.get(edge) != ItemStore.NONE) count++;
+        return count;
     }
 
-    public ItemEntity[] getItems() {
+    public int[] getItems() {
+        TransportLine l = line;
+        if (l != null) l.materialize();
         return items;
     }
 
+    /**
+     * Whether an item coming out of a dock facing the given direction would fit right now.
+     */
+    public boolean canAcceptFromDock(Direction dir) {
+        int slot = Layer.getStartingSlot(dir);
+
+        TransportLine l = line;
+        if (l != null) return l.isFree(this, slot);
+
+        int edge = edgeOf(slot);
+        return items[slot] == ItemStore.NONE && (edge < 0 || inbound.get(edge) == ItemStore.NONE);
+    }
+
+    /**
+     * Puts an item onto this conveyor as if it came out of a dock facing the given direction.
+     */
+    public boolean acceptFromDock(ItemType item, Direction dir, Structure<?> src) {
+        int slot = Layer.getStartingSlot(dir);
+        return addItemEntity(item, Layer.getStartingSlot(dir.inv()), slot, getNextDirection(item, dir, Const.Z_ITEMS, slot), src);
+    }
+
     public boolean addItemEntity(ItemType value, int lastSlot, int slot, Direction dir, Structure<?> src) {
+        ItemStore st = layer.itemStore;
+
+        TransportLine l = line;
+        if (l != null) {
+            int e = st.obtain();
+            st.setItem(e, value);
+            st.setSrc(e, src);
+            if (!l.offer(this, e, slot)) {
+                st.free(e);
+                return false;
+            }
+
+            Game.G.addSeenResource(value);
+            return true;
+        }
+
         synchronized (itemLock) {
-            if (items[slot] != null) return false;
-
-            ItemEntity e = Pools.obtain(ItemEntity.class);
-            e.item = value;
-            e.x = x;
-            e.y = y;
-            e.z = getItemZ(value, dir);
-            e.dir = dir;
-            e.src = src;
-            e.lastSlot = lastSlot;
-            e.slot = slot;
+            int edge = edgeOf(slot);
+            if (items[slot] != ItemStore.NONE || (edge >= 0 && inbound.get(edge) != ItemStore.NONE)) return false;
+
+            int e = st.obtain();
+            st.setItem(e, value);
+            st.setZ(e, getItemZ(value, dir));
+            st.setDir(e, dir);
+            st.setSrc(e, src);
+            st.setLastSlot(e, lastSlot);
+            st.setSlot(e, slot);
 
             Game.G.addSeenResource(value);
             items[slot] = e;
 
             itemCount++;
             itemChanges = true;
+            wake();
 
             return true;
         }
@@ -723,8 +970,28 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
             structs = null;
         }
 
-        for (ItemEntity e : items) {
-            if (e != null) e.postLoad();
+        if (itemTags != null) {
+            ItemStore st = layer.itemStore;
+            synchronized (itemLock) {
+                for (CompoundTag t : itemTags) {
+                    try {
+                        int e = st.load(t);
+                        int slot = st.getSlot(e);
+                        if (items[slot] != ItemStore.NONE && edgeOf(slot) >= 0) {
+                            // was still waiting to be taken in
+                            inbound.set(edgeOf(slot), e);
+                        } else {
+                            items[slot] = e;
+                            itemCount++;
+                        }
+                    } catch (NBTException e) {
+                        Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+                    }
+                }
+            }
+            itemTags = null;
+            itemChanges = true;
+            wake();
         }
     }
 
@@ -741,14 +1008,32 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         b.IntArray("structs", str);
 
         b.List("Items", TagType.Compound);
-        synchronized (itemLock) {
-            for (ItemEntity e : items)
-                if (e != null)
-                    e.save(b);
+        TransportLine l = line;
+        if (l != null) {
+            synchronized (l) {
+                l.materialize();
+                saveItems(b);
+            }
+        } else {
+            saveItems(b);
         }
         b.End();
     }
 
+    void saveItems(Builder b) {
+        ItemStore st = layer.itemStore;
+        synchronized (itemLock) {
+            for (int e : items)
+                if (e != ItemStore.NONE)
+                    st.save(e, x, y, b);
+            for (int edge = 0; edge < 4; edge++) {
+                int e = inbound.get(edge);
+                if (e != ItemStore.NONE)
+                    st.save(e, x, y, b);
+            }
+        }
+    }
+
     @Override
     protected void copyData(int[] copyRegion, Builder b) {
         super.copyData(copyRegion, b);
@@ -765,6 +1050,9 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     @Override
     protected void pasteData(int[] pasteRegion, CompoundTag tag) {
         super.pasteData(pasteRegion, tag);
+        TransportLine l = line;
+        if (l != null) l.dissolve();
+
         try {
             dir = Direction.values[tag.Byte("dir", (byte) 0)];
             int[] str = tag.IntArray("structs");
@@ -782,16 +1070,10 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         dir = Direction.values[tag.Byte("dir", (byte) 0)];
         structs = tag.IntArray("structs", null);
 
+        // there is no layer to store them in yet
         for (Tag t : tag.List("Items", TagType.Compound).data) {
-            try {
-                ItemEntity e = Pools.obtain(ItemEntity.class);
-                e.load((CompoundTag) t);
-                items[e.slot] = e;
-                itemChanges = true;
-                itemCount++;
-            } catch (NBTException e) {
-                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-            }
+            if (itemTags == null) itemTags = new Array<>(CompoundTag.class);
+            itemTags.add((CompoundTag) t);
         }
     }
 }
@@ -26,6 +26,7 @@ import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
+import de.dakror.quarry.game.ItemStore;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Direction;
@@ -114,18 +115,17 @@ public class ConveyorBridge extends Conveyor implements IItemZModifier, IFlippab
     @Override
     protected void notifyNeighbors(boolean chain) {
         if (structures[2] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(dir))) {
-            ((Conveyor) structures[2]).itemChanges = true;
-            if (chain) ((Conveyor) structures[2]).updateItems(0, 1, true, false);
+            notifyNeighbor(2, chain);
         }
         if (structures[3] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(getDirection2()))) {
-            ((Conveyor) structures[3]).itemChanges = true;
-            if (chain) ((Conveyor) structures[3]).updateItems(0, 1, true, false);
+            notifyNeighbor(3, chain);
         }
     }
 
     @Override
     public boolean isItemSlotFree(int slot) {
-        return items[slot] == null;
+        int edge = edgeOf(slot);
+        return items[slot] == ItemStore.NONE && (edge < 0 || inbound.get(edge) == ItemStore.NONE);
     }
 
     @Override
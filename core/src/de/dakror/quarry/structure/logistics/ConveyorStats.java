@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.logistics;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+
+/**
+ * Throughput and blocked time of the conveyors of a chunk, for the belt heatmap.
+ * Conveyors count the items leaving them and whether their front item is stuck,
+ * every {@link Const#CONVEYOR_STATS_INTERVAL} seconds of game time the counters are
+ * sampled into a ring buffer of {@link Const#CONVEYOR_STATS_SAMPLES} entries.
+ * Indexed by the tile within the chunk, the arrays are only allocated once a conveyor records anything.
+ * Written by the thread updating the chunk, read by the renderer without locking.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class ConveyorStats {
+    static final int TILES = Const.CHUNK_SIZE * Const.CHUNK_SIZE;
+    static final int SAMPLES = Const.CONVEYOR_STATS_SAMPLES;
+
+    // current window
+    int[] moved;
+    float[] blocked;
+    // window time the tile got blocked at, -1 if it is not
+    float[] blockedSince;
+    float time;
+
+    // ring buffers, one window per sample
+    short[] movedSamples;
+    byte[] blockedSamples;
+    final float[] sampleTimes = new float[SAMPLES];
+    int sample, samples;
+
+    public static int tile(int x, int y) {
+        return (x % Const.CHUNK_SIZE) * Const.CHUNK_SIZE + y % Const.CHUNK_SIZE;
+    }
+
+    void init() {
+        moved = new int[TILES];
+        blocked = new float[TILES];
+        blockedSince = new float[TILES];
+        Arrays.fill(blockedSince, -1);
+        movedSamples = new short[TILES * SAMPLES];
+        blockedSamples = new byte[TILES * SAMPLES];
+    }
+
+    /**
+     * @param moved items that left the conveyor
+     * @param stuck whether the front item could not leave. Only counts if nothing left at all
+     */
+    void record(int tile, int moved, boolean stuck) {
+        if (this.moved == null) {
+            if (moved == 0 && !stuck) return;
+            init();
+        }
+
+        this.moved[tile] += moved;
+
+        if (stuck && moved == 0) {
+            if (blockedSince[tile] < 0) blockedSince[tile] = time;
+        } else if (blockedSince[tile] >= 0) {
+            blocked[tile] += time - blockedSince[tile];
+            blockedSince[tile] = -1;
+        }
+    }
+
+    public void update(double deltaTime, int gameSpeed) {
+        if (moved == null || gameSpeed == 0) return;
+
+        time += deltaTime * gameSpeed;
+        if (time < Const.CONVEYOR_STATS_INTERVAL) return;
+
+        int offset = sample * TILES;
+        for (int i = 0; i < TILES; i++) {
+            float b = blocked[i];
+            if (blockedSince[i] >= 0) {
+                // still blocked, carries over into the next window
+                b += time - blockedSince[i];
+                blockedSince[i] = 0;
+            }
+
+            movedSamples[offset + i] = (short) Math.min(moved[i], Short.MAX_VALUE);
+            blockedSamples[offset + i] = (byte) Math.min(100, Math.round(b / time * 100));
+            moved[i] = 0;
+            blocked[i] = 0;
+        }
+
+        sampleTimes[sample] = time;
+        sample = (sample + 1) % SAMPLES;
+        if (samples < SAMPLES) samples++;
+        time = 0;
+    }
+
+    /**
+     * Averaged over all samples in the ring buffer.
+     */
+    public float getItemsPerSecond(int tile) {
+        if (samples == 0) return 0;
+
+        int sum = 0;
+        float time = 0;
+        for (int i = 0; i < samples; i++) {
+            sum += movedSamples[i * TILES + tile];
+            time += sampleTimes[i];
+        }
+        return sum / time;
+    }
+
+    /**
+     * Share of the time the front item was stuck, between 0 and 1, averaged over all samples in the ring buffer.
+     */
+    public float getBlockedRatio(int tile) {
+        if (samples == 0) return 0;
+
+        float sum = 0, time = 0;
+        for (int i = 0; i < samples; i++) {
+            sum += blockedSamples[i * TILES + tile] * sampleTimes[i];
+            time += sampleTimes[i];
+        }
+        return sum / time / 100;
+    }
+
+    /**
+     * Tints every conveyor from green to red by how much of the time it is blocked,
+     * the more items pass through, the more opaque. Expects the shaper in filled mode.
+     */
+    public void draw(ShapeRenderer shaper, Array<Conveyor> conveyors) {
+        if (samples == 0) return;
+
+        for (int i = 0; i < conveyors.size; i++) {
+            Conveyor c = conveyors.get(i);
+            TransportLine l = c.line;
+            Conveyor h = l != null ? l.getHead() : c;
+
+            int tile = tile(h.x, h.y);
+            float rate = getItemsPerSecond(tile);
+            float ratio = getBlockedRatio(tile);
+            if (rate == 0 && ratio == 0) continue;
+
+            shaper.setColor(ratio, 1 - ratio, 0, 0.2f + 0.5f * MathUtils.clamp(rate / Const.CONVEYOR_STATS_FULL_RATE, 0, 1));
+            shaper.rect(c.x * Const.TILE_SIZE, c.y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.logistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Chunk;
+
+/**
+ * Carries back-pressure upstream when a conveyor frees up an entry slot.
+ * Conveyors that want to move items in are queued breadth-first and updated once each,
+ * instead of recursing from neighbor to neighbor. Whatever does not fit into the budget
+ * of a tick just stays marked for changes and moves on its own next tick.
+ * One worklist per chunk, only used by the thread updating that chunk. The chain stops at the chunk border,
+ * neighbors in other chunks are only marked and woken up, their own chunk moves them on its next update.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class ConveyorWorklist {
+    static final AtomicInteger runs = new AtomicInteger();
+
+    final Chunk chunk;
+
+    final Conveyor[] queue = new Conveyor[Const.CONVEYOR_WORKLIST_SIZE];
+    int head, size;
+
+    // conveyors queued in this run carry it, so they are only updated once
+    int stamp = runs.incrementAndGet();
+    int queued;
+
+    public ConveyorWorklist(Chunk chunk) {
+        this.chunk = chunk;
+    }
+
+    /**
+     * Queues the neighbors the conveyor flagged during its last item update.
+     */
+    public void addChain(Conveyor c) {
+        int pending = c.pendingChain;
+        if (pending == 0) return;
+        c.pendingChain = 0;
+
+        for (int i = 0; i < 4; i++) {
+            if ((pending & (1 << i)) != 0 && c.structures[i] instanceof Conveyor)
+                add((Conveyor) c.structures[i]);
+        }
+    }
+
+    void add(Conveyor c) {
+        // another chunk worker may be updating it right now
+        if (c.layer == null || c.layer.getChunk(c.x, c.y) != chunk) {
+            c.itemChanges = true;
+            c.wake();
+            return;
+        }
+
+        if (c.worklistStamp == stamp) return;
+
+        if (size == queue.length || queued == Const.CONVEYOR_WORKLIST_BUDGET) {
+            // already marked for changes by the notification
+            c.wake();
+            return;
+        }
+
+        c.worklistStamp = stamp;
+        queue[(head + size) % queue.length] = c;
+        size++;
+        queued++;
+    }
+
+    public void run() {
+        while (size > 0) {
+            Conveyor c = queue[head];
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            size--;
+
+            c.updateItems(0, 1, true, true);
+            addChain(c);
+        }
+
+        head = 0;
+        queued = 0;
+        stamp = runs.incrementAndGet();
+    }
+}
@@ -115,6 +115,11 @@ public class Distributor extends RouterStructure {
         }
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        return super.hasPendingWork() || visual < 1;
+    }
+
     @Override
     protected boolean dispatchItem() {
         if (!anyTube) return false;
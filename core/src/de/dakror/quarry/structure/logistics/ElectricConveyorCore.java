@@ -16,8 +16,6 @@
 
 package de.dakror.quarry.structure.logistics;
 
-import java.util.HashSet;
-
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
@@ -75,10 +73,13 @@ public class ElectricConveyorCore extends Conveyor {
     final WindowedMean powerLevelMean = new WindowedMean(60);
     protected int framesPassedWithPower;
 
-    final HashSet<Integer> tmp = new HashSet<>();
+    // in chain order, starting at the conveyor in front of the core
     Array<ElectricConveyor> connectedConveyors = new Array<>();
     int[] conveyorsIndex;
 
+    // tiles covered by the core and its chain, conveyor changes elsewhere can't affect it
+    int minX, minY, maxX, maxY;
+
     public ElectricConveyorCore(int x, int y) {
         super(x, y, classSchema);
         dir = Direction.East;
@@ -94,34 +95,65 @@ public class ElectricConveyorCore extends Conveyor {
         super.onPlacement(fromLoading);
 
         if (!fromLoading && layer != null) {
-            resetAdjacentConveyors();
-            tmp.clear();
-            discoverAdjacentConveyors(this, tmp, 0);
+            truncateChain(0);
+            extendChain(this);
         }
     }
 
-    private void resetAdjacentConveyors() {
-        for (ElectricConveyor p : connectedConveyors) {
-            p.core = null;
+    /**
+     * Releases the conveyors from the given chain index on.
+     */
+    private void truncateChain(int from) {
+        for (int i = from; i < connectedConveyors.size; i++) {
+            ElectricConveyor p = connectedConveyors.get(i);
+            if (p.core == this) p.core = null;
             layer.dirtyBounds.add(p, de.dakror.quarry.util.Bounds.Flags.CONVEYOR);
         }
-        connectedConveyors.clear();
+        connectedConveyors.truncate(from);
     }
 
-    private void discoverAdjacentConveyors(Structure<?> of, HashSet<Integer> history, int depth) {
-        if (((of instanceof ElectricConveyor && ((ElectricConveyor) of).core == null) || of == this)
-                && !history.contains(of.getX() * layer.height + of.getY())) {
-            history.add(of.getX() * layer.height + of.getY());
-            if (of instanceof ElectricConveyor) {
-                ElectricConveyor e = (ElectricConveyor) of;
-                connectedConveyors.add(e);
-                e.core = this;
-            }
+    /**
+     * Follows the forward connections from the given chain member and claims unowned electric conveyors.
+     */
+    private void extendChain(Conveyor last) {
+        Structure<?> next = last.structures[3];
+        while (next instanceof ElectricConveyor && ((ElectricConveyor) next).core == null) {
+            ElectricConveyor e = (ElectricConveyor) next;
+            connectedConveyors.add(e);
+            e.core = this;
+            next = e.structures[3];
+        }
 
-            //  only forward connection
-            if (((Conveyor) of).structures[3] != null) {
-                discoverAdjacentConveyors(((Conveyor) of).structures[3], history, depth + 1);
-            }
+        chainChanged();
+    }
+
+    /**
+     * Keeps the intact part of the chain and only rediscovers from where it was changed.
+     */
+    private void updateChain(Bounds dirtyBounds) {
+        if (!dirtyBounds.hasFlag(de.dakror.quarry.util.Bounds.Flags.CONVEYOR)
+                || !dirtyBounds.touches(minX - 1, minY - 1, maxX - minX + 3, maxY - minY + 3)) return;
+
+        Conveyor last = this;
+        int keep = 0;
+        for (; keep < connectedConveyors.size; keep++) {
+            ElectricConveyor e = connectedConveyors.get(keep);
+            if (e.isDestroyed() || e.core != this || last.structures[3] != e) break;
+            last = e;
+        }
+
+        if (keep < connectedConveyors.size) truncateChain(keep);
+        extendChain(last);
+    }
+
+    private void chainChanged() {
+        minX = maxX = x;
+        minY = maxY = y;
+        for (ElectricConveyor e : connectedConveyors) {
+            minX = Math.min(minX, e.x);
+            minY = Math.min(minY, e.y);
+            maxX = Math.max(maxX, e.x);
+            maxY = Math.max(maxY, e.y);
         }
 
         powerUse = POWER_USE * Math.pow(POWER_USE_GROW, connectedConveyors.size);
@@ -164,13 +196,13 @@ public class ElectricConveyorCore extends Conveyor {
             }
         }
 
-        powerUse = POWER_USE * Math.pow(POWER_USE_GROW, connectedConveyors.size);
+        chainChanged();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        resetAdjacentConveyors();
+        truncateChain(0);
     }
 
     @Override
@@ -228,12 +260,6 @@ public class ElectricConveyorCore extends Conveyor {
             }
         } else noPower = false;
 
-        if (dirtyBounds.hasFlag(de.dakror.quarry.util.Bounds.Flags.CONVEYOR)) {
-            resetAdjacentConveyors();
-            tmp.clear();
-            discoverAdjacentConveyors(this, tmp, 0);
-        }
-
         super.update(deltaTime, gameSpeed * SPEED_BOOST, dirtyBounds);
     }
 
@@ -241,11 +267,15 @@ public class ElectricConveyorCore extends Conveyor {
     public void postUpdate(Bounds dirtyBounds) {
         super.postUpdate(dirtyBounds);
 
-        if (dirtyBounds.hasFlag(de.dakror.quarry.util.Bounds.Flags.CONVEYOR)) {
-            resetAdjacentConveyors();
-            tmp.clear();
-            discoverAdjacentConveyors(this, tmp, 0);
-        }
+        // the chain may run through any number of chunks, so it is only walked
+        // here and not in update, where other chunks are updating at the same time
+        updateChain(dirtyBounds);
+    }
+
+    @Override
+    public boolean hasPendingWork() {
+        // tracks its power level every tick
+        return true;
     }
 
     @Override
@@ -51,52 +51,50 @@ public class Filter extends RouterStructure {
 
     ItemType[] filters;
 
+    // direction the filter sends the item to, plus one
+    static final int ROUTE_EXACT_SHIFT = 8;
+
     public Filter(int x, int y) {
         super(x, y, classSchema);
         filters = new ItemType[4];
     }
 
     @Override
-    public boolean canAccept(ItemType item, int x, int y, Direction dir) {
-        if (super.canAccept(item, x, y, dir)) {
-            for (int i = 0; i < 4; i++) {
-                if (tubes[i] == null) continue;
-                if (filters[i] == null || filters[i] == item) return true;
-            }
+    protected int buildRoute(ItemType item) {
+        int route = super.buildRoute(item);
+        if (route == 0) return 0;
+
+        int exact = 0;
+        int open = 0;
+        boolean accept = false;
+        for (int i = 0; i < 4; i++) {
+            if (exact == 0 && filters[i] == item) exact = i + 1;
+            if (tubes[i] == null) continue;
+            if (filters[i] == null) open |= 1 << i;
+            if (filters[i] == null || filters[i] == item) accept = true;
         }
 
-        return false;
+        return (accept ? ROUTE_ACCEPT : 0) | open | (exact << ROUTE_EXACT_SHIFT);
     }
 
     @Override
     protected boolean dispatchItem() {
-        boolean anyNull = false;
-        boolean anyTube = false;
-
         if (currentSource == null)
             currentSource = this;
 
-        for (int i = 0; i < 4; i++) {
-            anyTube = true;
-
-            if (filters[i] == null) anyNull = true;
-
-            if (filters[i] == currentItem) {
-                // filter on this item is the source direction, so we abort this until the filter is resolved
-                if (currentSourceDirection == Direction.values[i]) {
-                    return false;
-                }
-                return layer.addItemEntity(currentItem, this, Direction.values[i], currentSource);
+        int route = getRoute(currentItem);
+        int exact = route >> ROUTE_EXACT_SHIFT;
+        if (exact > 0) {
+            // filter on this item is the source direction, so we abort this until the filter is resolved
+            if (currentSourceDirection == Direction.values[exact - 1]) {
+                return false;
             }
-
+            return layer.addItemEntity(currentItem, this, Direction.values[exact - 1], currentSource);
         }
 
-        if (!anyTube || !anyNull) return false;
-
         // go through unfiltered directions to find one that isnt backed up
         for (int i = 0; i < 4; i++) {
-            if (tubes[i] == null) continue;
-            if (filters[i] == null && layer.addItemEntity(currentItem, this, Direction.values[i], currentSource)) {
+            if ((route & (1 << i)) != 0 && layer.addItemEntity(currentItem, this, Direction.values[i], currentSource)) {
                 return true;
             }
         }
@@ -144,6 +142,7 @@ public class Filter extends RouterStructure {
                         @Override
                         public void call(ItemType data) {
                             ((Filter) ui.getUserObject()).filters[me] = data;
+                            ((Filter) ui.getUserObject()).invalidateRoutes();
                             updateUI();
                             setItemNotifications();
                         }
@@ -178,6 +177,7 @@ public class Filter extends RouterStructure {
             for (int i = 0; i < 4; i++) {
                 filters[i] = s[i] == 0 ? null : Item.get(s[i]);
             }
+            invalidateRoutes();
         }
     }
 
@@ -211,6 +211,7 @@ public class Filter extends RouterStructure {
             for (int i = 0; i < 4; i++) {
                 filters[i] = s[i] == 0 ? null : Item.get(s[i]);
             }
+            invalidateRoutes();
         }
     }
 }
@@ -26,7 +26,7 @@ import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
-import de.dakror.quarry.game.ItemEntity;
+import de.dakror.quarry.game.ItemStore;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Direction;
@@ -113,19 +113,21 @@ public class Hopper extends ConveyorBridge {
         int dir = dirSlot == minSlot ? 1 : -1;
 
         for (int i = 0; i < Const.ITEMS_PER_CONVEYOR / 2 - 1; i++) {
-            if (!isItemSlotFree(blockerSlot + i * dir) && items[blockerSlot + i * dir].dir == getDirection2()) return false;
+            int e = items[blockerSlot + i * dir];
+            if (!isItemSlotFree(blockerSlot + i * dir) && e != ItemStore.NONE && layer.itemStore.getDir(e) == getDirection2()) return false;
         }
 
         return true;
     }
 
     @Override
-    protected void updateItemWithin(ItemEntity e, boolean chain) {
-        if (e.slot == deciderSlot && target != null && !target.canAccept(e.item, x, y, dir)) {
+    protected void updateItemWithin(int e, boolean chain) {
+        ItemStore st = layer.itemStore;
+        if (st.getSlot(e) == deciderSlot && target != null && !target.canAccept(st.getItem(e), x, y, dir)) {
             if (isQueueFree()) {
-                e.dir = getDirection2();
+                st.setDir(e, getDirection2());
             } else {
-                e.dir = null;
+                st.setDir(e, null);
             }
         }
 
@@ -135,8 +137,7 @@ public class Hopper extends ConveyorBridge {
     @Override
     protected void notifyNeighbors(boolean chain) {
         if (structures[2] instanceof Conveyor && isItemSlotFree(Layer.getStartingSlot(dir))) {
-            ((Conveyor) structures[2]).itemChanges = true;
-            if (chain) ((Conveyor) structures[2]).updateItems(0, 1, true, false);
+            notifyNeighbor(2, chain);
         }
     }
 
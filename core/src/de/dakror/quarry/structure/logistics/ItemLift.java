@@ -16,6 +16,11 @@
 
 package de.dakror.quarry.structure.logistics;
 
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item;
 import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
@@ -43,10 +48,17 @@ public class ItemLift extends Structure<Schema> {
 
     ItemLift other;
     boolean hasOutput;
+    // the conveyor at the output dock, items are put onto it directly
+    Conveyor output;
     boolean upper;
 
-    ItemType currentItem;
-    Structure<?> currentSource;
+    // items on their way to the other side, oldest first
+    final ItemType[] buffer = new ItemType[Const.ITEM_LIFT_BUFFER];
+    final Structure<?>[] sources = new Structure<?>[Const.ITEM_LIFT_BUFFER];
+    int first, count;
+
+    // other side needs to refresh its output and notifications at the next tick barrier
+    boolean notifyOther;
 
     public ItemLift(int x, int y) {
         this(x, y, true, classSchema);
@@ -91,6 +103,17 @@ public class ItemLift extends Structure<Schema> {
                         || (s.getSchema().type == StructureType.ElectricConveyorCore && ((Conveyor) s).getDirection() == d)
                         || (s.getSchema().type == StructureType.ConveyorBridge && (((ConveyorBridge) s).getDirection() != d.inv() || ((ConveyorBridge) s).getDirection2() != d.inv()))
                         || (s.getSchema().type == StructureType.Hopper && ((Conveyor) s).getDirection() == d));
+        output = hasOutput ? (Conveyor) s : null;
+    }
+
+    /**
+     * Puts the item onto the output conveyor, without going through the layer.
+     */
+    protected boolean output(ItemType item, Structure<?> source) {
+        Conveyor c = output;
+        if (c == null || c.isDestroyed()) return false;
+
+        return c.acceptFromDock(item, getDocks()[0].dir, source == null ? this : source);
     }
 
     @Override
@@ -99,14 +122,37 @@ public class ItemLift extends Structure<Schema> {
 
         if (dirtyBounds.touches(this)) {
             updateOutput();
-            other.updateOutput();
             setItemNotifications();
+            notifyOther = true;
+            queueHandoff();
+        }
+
+        if (count > 0) {
+            queueHandoff();
+        }
+    }
+
+    @Override
+    public void applyHandoff() {
+        super.applyHandoff();
+
+        if (notifyOther) {
+            other.updateOutput();
             other.setItemNotifications();
+            notifyOther = false;
         }
 
-        if (currentItem != null && other.layer.addItemEntity(currentItem, other, other.getDocks()[0].dir, currentSource)) {
-            currentItem = null;
-            currentSource = null;
+        // as many as the other side takes, usually one per tick as the conveyor has to move on first
+        int moved = 0;
+        while (count > 0 && other.output(buffer[first], sources[first])) {
+            buffer[first] = null;
+            sources[first] = null;
+            first = (first + 1) % buffer.length;
+            count--;
+            moved++;
+        }
+
+        if (moved > 0) {
             setItemNotifications();
             other.setItemNotifications();
         }
@@ -114,16 +160,19 @@ public class ItemLift extends Structure<Schema> {
 
     @Override
     public boolean canAccept(ItemType item, int x, int y, Direction dir) {
-        return !item.categories.contains(ItemCategory.Fluid) && isNextToDock(x, y, dir, getDocks()[1]) && other.hasOutput && currentItem == null;
+        return !item.categories.contains(ItemCategory.Fluid) && isNextToDock(x, y, dir, getDocks()[1]) && other.hasOutput && count < buffer.length;
     }
 
     @Override
     public boolean acceptItem(ItemType item, Structure<?> source, Direction dir) {
-        if (item.categories.contains(ItemCategory.Fluid) || !other.hasOutput || currentItem != null) return false;
-        currentItem = item;
-        currentSource = source;
+        if (item.categories.contains(ItemCategory.Fluid) || !other.hasOutput || count == buffer.length) return false;
+        int i = (first + count) % buffer.length;
+        buffer[i] = item;
+        sources[i] = source;
+        count++;
         setItemNotifications();
-        other.setItemNotifications();
+        notifyOther = true;
+        queueHandoff();
         return true;
     }
 
@@ -132,4 +181,27 @@ public class ItemLift extends Structure<Schema> {
         super.onDestroy();
         other.layer.removeStructure(other);
     }
+
+    @Override
+    protected void saveData(Builder b) {
+        super.saveData(b);
+        if (count > 0) {
+            short[] arr = new short[count];
+            for (int i = 0; i < count; i++)
+                arr[i] = buffer[(first + i) % buffer.length].value;
+            b.ShortArray("buffer", arr);
+        }
+    }
+
+    @Override
+    protected void loadData(CompoundTag tag) throws NBTException {
+        super.loadData(tag);
+        short[] arr = tag.ShortArray("buffer", null);
+        if (arr != null) {
+            for (int i = 0; i < arr.length && count < buffer.length; i++) {
+                ItemType t = Item.get(arr[i]);
+                if (t != null) buffer[count++] = t;
+            }
+        }
+    }
 }
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.logistics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.game.ItemStore;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.base.Structure;
+
+/**
+ * A straight run of plain conveyors within one chunk, simulated as a single lane.
+ * Items are kept head first together with the number of free slots in front of them,
+ * so a tick only has to touch the head and the first item that is not queued up yet,
+ * no matter how long the run is or how many items are on it.
+ * The per-conveyor item arrays are only filled in when something wants to look at them.
+ * Runs of electric conveyors powered by the same core form a line as well, which then
+ * only has to ask the core for power once per tick.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class TransportLine {
+    static final int N = Const.ITEMS_PER_CONVEYOR;
+
+    static final AtomicInteger rebuilds = new AtomicInteger();
+
+    final Direction dir;
+    // powers the line if it is made of electric conveyors
+    final ElectricConveyorCore core;
+    // head first
+    final Conveyor[] members;
+    final int length;
+    final ItemStore store;
+
+    // head first ring buffer of item handles
+    final int[] items;
+    // free lane slots in front of each item
+    final int[] gaps;
+    int first, count;
+    // lane slots up to and including the last item
+    int used;
+    // first item that is not queued up behind the head
+    int moving;
+
+    // item handed over to the tail entry, taken in on the next update
+    final AtomicInteger inbound = new AtomicInteger(ItemStore.NONE);
+
+    boolean viewDirty;
+    boolean dissolved;
+    int stamp;
+
+    TransportLine(Direction dir, Conveyor[] members) {
+        this.dir = dir;
+        this.members = members;
+        core = coreOf(members[0]);
+        length = members.length * N;
+        store = members[0].layer.itemStore;
+        items = new int[length];
+        gaps = new int[length];
+    }
+
+    public Conveyor getHead() {
+        return members[0];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    boolean hasPendingWork() {
+        return count > 0 || inbound.get() != ItemStore.NONE;
+    }
+
+    boolean isPowered() {
+        return core == null || !core.noPower;
+    }
+
+    synchronized void update(int gameSpeed) {
+        int in = inbound.get();
+        if (in != ItemStore.NONE && used < length) {
+            inbound.set(ItemStore.NONE);
+            append(length - 1, in);
+            setup(in, slotAt(dir, N - 1));
+            viewDirty = true;
+        }
+
+        if (count == 0 || gameSpeed == 0) return;
+
+        boolean full = used == length;
+
+        if (gaps[first] == 0 && output(items[first])) {
+            // everything behind the head moves up into the freed slot
+            items[first] = ItemStore.NONE;
+            first = (first + 1) % length;
+            count--;
+            used--;
+            moving--;
+            // the whole line shows up in the heatmap as its head
+            members[0].recordStats(1, false);
+        } else if (moving < count) {
+            if (gaps[first] == 0) members[0].recordStats(0, true);
+            int i = (first + moving) % length;
+            gaps[i]--;
+            used--;
+            while (moving < count && gaps[(first + moving) % length] == 0)
+                moving++;
+        } else {
+            members[0].recordStats(0, true);
+            return;
+        }
+
+        viewDirty = true;
+
+        // a feeder blocked by the full tail has to retry
+        Structure<?> feeder = members[members.length - 1].structures[0];
+        if (full && feeder instanceof Conveyor) {
+            Conveyor c = (Conveyor) feeder;
+            c.itemChanges = true;
+            c.wake();
+        }
+    }
+
+    boolean output(int e) {
+        Conveyor head = members[0];
+        Structure<?> s = head.structures[3];
+        if (s == null) return false;
+
+        store.setSlot(e, slotAt(dir, 0));
+        store.setDir(e, dir);
+
+        if (s instanceof Conveyor) {
+            return ((Conveyor) s).handoff(e, Layer.getStartingSlot(dir));
+        }
+
+        ItemType item = store.getItem(e);
+        if (s.canAccept(item, head.x, head.y, dir) && s.acceptItem(item, store.getSrc(e), dir)) {
+            store.free(e);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes over an item at the tail entry without locking the line, everything else goes through {@link #offer}.
+     * <p>
+     * A plain conveyor calls this holding its item lock, and a line holding its own monitor when its head
+     * outputs, so side entries nest two monitors. That can't deadlock: the nested monitor always belongs to a line
+     * of a neighbor, and the chunk workers of one phase never update neighboring chunks, so no two of them reach
+     * the same line or conveyor. Drawing takes a line's monitor and then only the item locks of its own members,
+     * which never call into their line with the item lock held.
+     */
+    boolean handoff(Conveyor c, int e, int slot) {
+        if (c != members[members.length - 1] || offsetOf(dir, slot) != N - 1) return offer(c, e, slot);
+        if (dissolved || used == length || !isPowered() || !inbound.compareAndSet(ItemStore.NONE, e)) return false;
+
+        store.moveTo(e, slot);
+        members[0].wake();
+        return true;
+    }
+
+    synchronized boolean offer(Conveyor c, int e, int slot) {
+        if (dissolved || !isPowered()) return false;
+
+        int q = offsetOf(dir, slot);
+        if (q < 0) return false;
+        int pos = c.lineIndex * N + q;
+        if (pos == length - 1 && inbound.get() != ItemStore.NONE) return false;
+
+        if (pos >= used) {
+            // behind the last item, which is where almost everything enters
+            append(pos, e);
+        } else if (!insert(pos, e)) {
+            return false;
+        }
+
+        setup(e, slot);
+
+        viewDirty = true;
+        members[0].wake();
+        return true;
+    }
+
+    void append(int pos, int e) {
+        int i = (first + count) % length;
+        items[i] = e;
+        gaps[i] = pos - used;
+        if (moving == count && gaps[i] == 0) moving++;
+        count++;
+        used = pos + 1;
+    }
+
+    void setup(int e, int slot) {
+        store.setSlot(e, slot);
+        store.setLastSlot(e, -1);
+        store.setDir(e, dir);
+        store.setZ(e, Const.Z_ITEMS);
+    }
+
+    boolean insert(int pos, int e) {
+        int p = -1;
+        for (int k = 0; k < count; k++) {
+            int i = (first + k) % length;
+            int next = p + gaps[i] + 1;
+            if (next == pos) return false;
+            if (next > pos) {
+                for (int m = count; m > k; m--) {
+                    int to = (first + m) % length, from = (first + m - 1) % length;
+                    items[to] = items[from];
+                    gaps[to] = gaps[from];
+                }
+                items[i] = e;
+                gaps[i] = pos - p - 1;
+                gaps[(i + 1) % length] = next - pos - 1;
+                count++;
+
+                moving = 0;
+                while (moving < count && gaps[(first + moving) % length] == 0)
+                    moving++;
+                return true;
+            }
+            p = next;
+        }
+        return false;
+    }
+
+    synchronized boolean isFree(Conveyor c, int slot) {
+        int q = offsetOf(dir, slot);
+        if (q < 0) return false;
+        int pos = c.lineIndex * N + q;
+        if (pos == length - 1 && inbound.get() != ItemStore.NONE) return false;
+        if (pos >= used) return true;
+
+        int p = -1;
+        for (int k = 0; k < count; k++) {
+            p += gaps[(first + k) % length] + 1;
+            if (p == pos) return false;
+            if (p > pos) break;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the items back into the arrays of the member conveyors, for drawing and saving.
+     */
+    synchronized void materialize() {
+        int in = inbound.get();
+        if ((!viewDirty && in == ItemStore.NONE) || dissolved) return;
+
+        for (Conveyor c : members) {
+            Arrays.fill(c.items, ItemStore.NONE);
+            c.itemCount = 0;
+        }
+
+        int p = -1;
+        for (int k = 0; k < count; k++) {
+            int i = (first + k) % length;
+            p += gaps[i] + 1;
+
+            Conveyor c = members[p / N];
+            int e = items[i];
+            int slot = slotAt(dir, p % N);
+            store.setSlot(e, slot);
+            store.setLastSlot(e, -1);
+            store.setDir(e, dir);
+            c.items[slot] = e;
+            c.itemCount++;
+        }
+
+        if (in != ItemStore.NONE) {
+            // not taken in yet, but already on the belt as far as anyone looking is concerned
+            Conveyor c = members[members.length - 1];
+            c.items[slotAt(dir, N - 1)] = in;
+            c.itemCount++;
+        }
+
+        viewDirty = false;
+    }
+
+    /**
+     * Hands the items back to the member conveyors, which simulate them on their own again.
+     */
+    public synchronized void dissolve() {
+        if (dissolved) return;
+
+        viewDirty = true;
+        materialize();
+        dissolved = true;
+
+        Arrays.fill(items, ItemStore.NONE);
+        count = 0;
+        inbound.set(ItemStore.NONE);
+
+        for (Conveyor c : members) {
+            c.line = null;
+            c.itemChanges = true;
+            c.wake();
+        }
+    }
+
+    boolean matches(Array<Conveyor> chain) {
+        if (dissolved || chain.size != members.length || coreOf(chain.first()) != core) return false;
+        for (int i = 0; i < members.length; i++)
+            if (members[i] != chain.get(i) || members[i].line != this) return false;
+        return true;
+    }
+
+    static TransportLine create(Array<Conveyor> chain) {
+        Direction dir = chain.first().dir;
+        int length = chain.size * N;
+
+        ItemStore store = chain.first().layer.itemStore;
+        int[] lane = new int[length];
+        Arrays.fill(lane, ItemStore.NONE);
+        for (int i = 0; i < chain.size; i++) {
+            Conveyor c = chain.get(i);
+            synchronized (c.itemLock) {
+                for (int slot = 0; slot < c.items.length; slot++) {
+                    int e = c.items[slot];
+                    if (e == ItemStore.NONE) continue;
+
+                    // only take over items that already run along the lane
+                    int q = offsetOf(dir, slot);
+                    Direction d = store.getDir(e);
+                    if (q < 0 || (d != null && d != dir) || lane[i * N + q] != ItemStore.NONE) return null;
+                    lane[i * N + q] = e;
+                }
+            }
+        }
+
+        TransportLine l = new TransportLine(dir, chain.toArray());
+        synchronized (l) {
+            for (int pos = 0; pos < length; pos++) {
+                int e = lane[pos];
+                if (e == ItemStore.NONE) continue;
+
+                store.setDir(e, dir);
+                int i = l.count;
+                l.items[i] = e;
+                l.gaps[i] = pos - l.used;
+                if (l.moving == l.count && l.gaps[i] == 0) l.moving++;
+                l.count++;
+                l.used = pos + 1;
+            }
+
+            for (int i = 0; i < chain.size; i++) {
+                Conveyor c = chain.get(i);
+                synchronized (c.itemLock) {
+                    Arrays.fill(c.items, ItemStore.NONE);
+                    c.itemCount = 0;
+                    c.lineIndex = i;
+                    c.line = l;
+                }
+            }
+
+            l.viewDirty = true;
+        }
+
+        if (l.count > 0) l.members[0].wake();
+
+        return l;
+    }
+
+    /**
+     * Merges the straight runs among the conveyors of one chunk into lines
+     * and dissolves lines that no longer match. Unchanged lines are kept.
+     */
+    public static void rebuild(Array<Conveyor> conveyors, boolean enabled) {
+        int stamp = rebuilds.incrementAndGet();
+
+        if (enabled) {
+            for (int i = 0; i < conveyors.size; i++) {
+                Conveyor c = conveyors.get(i);
+                if (isCandidate(c)) c.lineStamp = stamp;
+            }
+
+            Array<Conveyor> chain = new Array<>(Conveyor.class);
+            for (int i = 0; i < conveyors.size; i++) {
+                Conveyor c = conveyors.get(i);
+                // walk back from the heads only
+                if (c.lineStamp != stamp || isLinked(c, c.structures[3], stamp)) continue;
+
+                chain.clear();
+                chain.add(c);
+                while (isLinked(chain.peek().structures[0], chain.peek(), stamp))
+                    chain.add((Conveyor) chain.peek().structures[0]);
+
+                if (chain.size < Const.TRANSPORT_LINE_MIN_LENGTH) continue;
+
+                TransportLine l = c.line;
+                if (l == null || !l.matches(chain)) {
+                    for (Conveyor m : chain)
+                        if (m.line != null) m.line.dissolve();
+                    l = create(chain);
+                }
+                if (l != null) l.stamp = stamp;
+            }
+        }
+
+        for (int i = 0; i < conveyors.size; i++) {
+            TransportLine l = conveyors.get(i).line;
+            if (l != null && l.stamp != stamp) l.dissolve();
+        }
+    }
+
+    static boolean isCandidate(Conveyor c) {
+        return (c.getClass() == Conveyor.class || (c.getClass() == ElectricConveyor.class && ((ElectricConveyor) c).core != null))
+                && c.layer != null && !c.isDestroyed()
+                && c.structures[1] == null && c.structures[2] == null;
+    }
+
+    static boolean isLinked(Structure<?> from, Structure<?> to, int stamp) {
+        if (!(from instanceof Conveyor) || !(to instanceof Conveyor)) return false;
+        Conveyor a = (Conveyor) from;
+        Conveyor b = (Conveyor) to;
+        return a.lineStamp == stamp && b.lineStamp == stamp && a.dir == b.dir
+                && a.getClass() == b.getClass() && coreOf(a) == coreOf(b)
+                && a.structures[3] == b && b.structures[0] == a;
+    }
+
+    static ElectricConveyorCore coreOf(Conveyor c) {
+        return c instanceof ElectricConveyor ? ((ElectricConveyor) c).core : null;
+    }
+
+    /**
+     * @param q lane offset within a conveyor, 0 is the exit edge
+     */
+    static int slotAt(Direction dir, int q) {
+        switch (dir) {
+            case East:
+                return 2 * N - 1 - q;
+            case West:
+                return N + q;
+            case North:
+                return N - 1 - q;
+            default:
+                return q;
+        }
+    }
+
+    /**
+     * @return the lane offset of the slot, or -1 if it is not on the lane
+     */
+    static int offsetOf(Direction dir, int slot) {
+        if (dir == Direction.East || dir == Direction.West) {
+            // both centers are the same spot
+            if (slot == N / 2) slot = N + N / 2;
+            if (slot < N) return -1;
+            return dir == Direction.East ? 2 * N - 1 - slot : slot - N;
+        } else {
+            if (slot == N + N / 2) slot = N / 2;
+            if (slot >= N) return -1;
+            return dir == Direction.North ? N - 1 - slot : slot;
+        }
+    }
+}
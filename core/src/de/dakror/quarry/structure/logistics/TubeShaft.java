@@ -16,6 +16,11 @@
 
 package de.dakror.quarry.structure.logistics;
 
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item;
 import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
@@ -29,6 +34,7 @@ import de.dakror.quarry.structure.base.Schema;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.base.component.CTank;
+import de.dakror.quarry.util.Bounds;
 
 /**
  * @author Maximilian Stark | Dakror
@@ -45,6 +51,9 @@ public class TubeShaft extends Structure<Schema> {
     TubeShaft other;
     int direction;
 
+    // fluid accepted this tick, moved into the other side's tank at the tick barrier
+    final CTank handoff = new CTank(Const.SHAFT_FLUID_HANDOFF);
+
     public TubeShaft(int x, int y) {
         this(x, y, classSchema, 1);
     }
@@ -78,16 +87,58 @@ public class TubeShaft extends Structure<Schema> {
         other = (TubeShaft) Game.G.getLayer(layer.getIndex() + direction).getStructure(x, y);
     }
 
+    @Override
+    public void update(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
+        super.update(deltaTime, gameSpeed, dirtyBounds);
+
+        if (!handoff.isEmpty()) {
+            queueHandoff();
+        }
+    }
+
+    @Override
+    public void applyHandoff() {
+        super.applyHandoff();
+
+        if (other == null || handoff.isEmpty()) return;
+
+        int count = handoff.getCount();
+        int rest = ((CTank) other.getComponents()[0]).addWithRest(handoff.getFluid(), count);
+        handoff.removeUnsafe(count - rest);
+    }
+
     @Override
     public boolean canAccept(ItemType item, int x, int y, Direction dir) {
         return item.categories.contains(ItemCategory.Fluid) && isNextToDock(x, y, dir, getDocks()[1])
-                && ((CTank) other.getComponents()[0]).hasSpace();
+                && handoff.canAccept(item);
     }
 
     @Override
     public int acceptFluid(ItemType item, int amount, Structure<?> source) {
         if (!item.categories.contains(ItemCategory.Fluid)) return amount;
-        return ((CTank) other.getComponents()[0]).addWithRest(item, amount);
+        int rest = handoff.addWithRest(item, amount);
+        if (rest < amount) queueHandoff();
+        return rest;
+    }
+
+    @Override
+    protected void saveData(Builder b) {
+        super.saveData(b);
+        if (!handoff.isEmpty()) {
+            b
+                    .Short("handoffFluid", handoff.getFluid().value)
+                    .Int("handoffAmount", handoff.getCount());
+        }
+    }
+
+    @Override
+    protected void loadData(CompoundTag tag) throws NBTException {
+        super.loadData(tag);
+        short fluid = tag.Short("handoffFluid", (short) 0);
+        if (fluid != 0) {
+            ItemType t = Item.get(fluid);
+            if (t != null) handoff.addWithRest(t, tag.Int("handoffAmount", 0));
+        }
     }
 
     @Override
@@ -359,6 +359,12 @@ public class GasTurbine extends GeneratorStructure {
         }
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        // the levels drive each other
+        return true;
+    }
+
     @Override
     protected void setRecipe(int index) {
         setItemNotifications();
@@ -261,6 +261,11 @@ public class Substation extends Structure<SubstationSchema> {
         return getSchema().capacity;
     }
 
+    public void setPowerLevel(double powerLevel) {
+        this.powerLevel = Math.max(0, Math.min(getSchema().capacity, powerLevel));
+        wake();
+    }
+
     @Override
     public double requestPower(double power, double networkStrength) {
         double deducted = Math.min(power, powerLevel);
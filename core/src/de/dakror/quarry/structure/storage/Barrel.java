@@ -127,6 +127,11 @@ public class Barrel extends StorageStructure {
         }
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        return clicked || hasComponentWork();
+    }
+
     @Override
     public void drawFrame(SpriteRenderer spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         super.drawFrame(spriter, shaper, pfxBatch);
@@ -117,6 +117,7 @@ public class Storage extends StorageStructure {
     protected boolean outputSelectMode;
     protected boolean pumping;
     protected boolean isTubeAtOutput;
+    protected Conveyor outputConveyor;
     protected float pumpOutDelay;
     protected int pumpOutItemIndex;
 
@@ -166,11 +167,12 @@ public class Storage extends StorageStructure {
 
         Dock d = getDocks()[1];
 
-        if (dirtyBounds.touches(this)) {
+        if (dirtyBounds.touches(this) || (isTubeAtOutput && outputConveyor == null)) {
             Structure<?> s = layer.getStructure(x + d.x + d.dir.dx, y + d.y + d.dir.dy);
             isTubeAtOutput = s instanceof Conveyor;
             if (s instanceof ElectricConveyorCore && ((ElectricConveyorCore) s).getDirection().isPerpendicular(d.dir))
                 isTubeAtOutput = false;
+            outputConveyor = isTubeAtOutput ? (Conveyor) s : null;
         }
 
         if (pumping && !outputSelectMode && gameSpeed > 0) {
@@ -189,11 +191,16 @@ public class Storage extends StorageStructure {
     protected void pumpOutItems() {
         CInventory inv = (CInventory) components[0];
 
+        // nothing fits until the belt has moved on, so don't bother trying every output
+        Conveyor c = outputConveyor;
+        Direction d = getDocks()[1].dir;
+        if (c == null || c.isDestroyed() || !c.canAcceptFromDock(d)) return;
+
         for (int i = 0; i < outputs.size; i++) {
             int index = (pumpOutItemIndex + i) % outputs.size;
             ItemType t = outputs.get(index);
             if (inv.remove(t, 1)) {
-                if (layer.addItemEntity(t, this, getDocks()[1], this)) {
+                if (c.acceptFromDock(t, d, this)) {
                     if (ui != null)
                         setUIAmount(t, inv.get(t));
                     onItemCountChanged(t);
@@ -107,7 +107,14 @@ public class Tank extends Structure<Schema> {
         if (item.categories.contains(ItemCategory.IntermediateOil)) // volatile
             item = ItemType.CrudeOil;
 
-        return ((CTank) components[0]).addWithRest(item, amount);
+        int rest = ((CTank) components[0]).addWithRest(item, amount);
+        if (rest != amount) wake();
+        return rest;
+    }
+
+    @Override
+    public boolean hasPendingWork() {
+        return clicked || hasComponentWork();
     }
 
     @Override
@@ -256,20 +256,19 @@ public class Tutorial {
             }
         });
         steps.add(new Step(0, Const.UI_H - heights[12][l], Const.UI_W, heights[12][l], false, false) {
-            boolean hasBamboozled = false;
+            volatile boolean hasBamboozled = false;
 
             @Override
             public void onShow(Window w) {
-                synchronized (Game.renderThreadLock) {
-                    Game.G.renderThreadTasks.add(new Runnable() {
-                        @Override
-                        public void run() {
-                            Conveyor c = (Conveyor) Game.G.layer.getStructure(2012);
-                            c.setRotation(Direction.East);
-                            hasBamboozled = true;
-                        }
-                    });
-                }
+                // a player rotation, so it is recorded like one
+                Game.G.mutate(new Runnable() {
+                    @Override
+                    public void run() {
+                        Conveyor c = (Conveyor) Game.G.layer.getStructure(2012);
+                        Game.G.rotateStructure(Game.G.layer, c, Direction.East);
+                        hasBamboozled = true;
+                    }
+                });
             }
 
             @Override
@@ -35,6 +35,8 @@ import de.dakror.quarry.structure.storage.Barrel;
 import de.dakror.quarry.structure.storage.Storage;
 
 /**
+ * Mutators are synchronized as structures in different chunks may mark regions dirty concurrently.
+ *
  * @author Maximilian Stark | Dakror
  */
 public class Bounds {
@@ -56,13 +58,13 @@ public class Bounds {
         public static final int GASTURBINE = 1 << 11;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         width = 0;
         height = 0;
         flags = 0;
     }
 
-    public void add(Structure<?> s, int flags) {
+    public synchronized void add(Structure<?> s, int flags) {
         this.flags |= flags;
 
         if (s instanceof Conveyor)
@@ -107,7 +109,7 @@ public class Bounds {
 
     }
 
-    public void set(Bounds o) {
+    public synchronized void set(Bounds o) {
         x = o.x;
         y = o.y;
         width = o.width;
@@ -115,7 +117,7 @@ public class Bounds {
         flags = o.flags;
     }
 
-    public void set(int x, int y, int width, int height, int flags) {
+    public synchronized void set(int x, int y, int width, int height, int flags) {
         this.x = x;
         this.y = y;
         this.width = width;
@@ -123,7 +125,7 @@ public class Bounds {
         this.flags = flags;
     }
 
-    public void add(Bounds o) {
+    public synchronized void add(Bounds o) {
         flags |= o.flags;
         width = Math.max(x + width, o.x + o.width) - Math.min(x, o.x);
         height = Math.max(y + height, o.y + o.height) - Math.min(y, o.y);
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.util;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Disposable;
+
+import de.dakror.quarry.Const;
+
+/**
+ * Axis aligned, unrotated quads written straight into a preallocated vertex buffer,
+ * for the items on the conveyors of a chunk. Uses the same vertex layout as the
+ * structure mesh, so it is drawn with the depth spriter's shader in one call.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class ItemBatch implements Disposable {
+    static final int VERTEX_SIZE = 5;
+    static final int QUAD_SIZE = 4 * VERTEX_SIZE;
+
+    final Mesh mesh;
+    final float[] vertices;
+    int idx;
+
+    ShaderProgram shader;
+
+    public ItemBatch() {
+        int quads = Const.ITEM_BATCH_SIZE;
+
+        mesh = new Mesh(false, quads * 4, quads * 6,
+                new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+                new VertexAttribute(Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"));
+
+        vertices = new float[quads * QUAD_SIZE];
+
+        short[] indices = new short[quads * 6];
+        for (int i = 0, j = 0; i < indices.length; i += 6, j += 4) {
+            indices[i] = (short) j;
+            indices[i + 1] = (short) (j + 1);
+            indices[i + 2] = (short) (j + 2);
+            indices[i + 3] = (short) (j + 2);
+            indices[i + 4] = (short) (j + 3);
+            indices[i + 5] = (short) j;
+        }
+        mesh.setIndices(indices);
+    }
+
+    public void begin(ShaderProgram shader) {
+        this.shader = shader;
+        idx = 0;
+    }
+
+    public void add(TextureRegion region, float x, float y, float z, float width, float height) {
+        if (idx == vertices.length) flush();
+
+        float[] v = vertices;
+        int i = idx;
+        float x2 = x + width, y2 = y + height;
+        float u = region.getU(), v1 = region.getV(), u2 = region.getU2(), v2 = region.getV2();
+
+        v[i++] = x;
+        v[i++] = y;
+        v[i++] = z;
+        v[i++] = u;
+        v[i++] = v2;
+
+        v[i++] = x;
+        v[i++] = y2;
+        v[i++] = z;
+        v[i++] = u;
+        v[i++] = v1;
+
+        v[i++] = x2;
+        v[i++] = y2;
+        v[i++] = z;
+        v[i++] = u2;
+        v[i++] = v1;
+
+        v[i++] = x2;
+        v[i++] = y;
+        v[i++] = z;
+        v[i++] = u2;
+        v[i++] = v2;
+
+        idx = i;
+    }
+
+    public void end() {
+        flush();
+        shader = null;
+    }
+
+    void flush() {
+        if (idx == 0) return;
+
+        mesh.setVertices(vertices, 0, idx);
+        mesh.render(shader, GL20.GL_TRIANGLES, 0, idx / QUAD_SIZE * 6);
+        idx = 0;
+    }
+
+    @Override
+    public void dispose() {
+        mesh.dispose();
+    }
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+
+/**
+ * Runs non-urgent work without hitching the render thread. Jobs posted to the main thread
+ * are worked off by priority within a per-frame time budget, long jobs can be sliced into
+ * steps. Background work runs on a small worker pool, its completion is posted back.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class Scheduler {
+    public enum Priority {
+        High,
+        Normal,
+        Low;
+
+        public static final Priority[] values = values();
+    }
+
+    /**
+     * A slice of work done on the main thread.
+     */
+    public interface Job {
+        /**
+         * @return true if the job is done, otherwise it is called again later
+         */
+        boolean step();
+    }
+
+    static class RunnableJob implements Job {
+        final Runnable runnable;
+
+        RunnableJob(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public boolean step() {
+            runnable.run();
+            return true;
+        }
+    }
+
+    final Array<Array<Job>> queues = new Array<>();
+
+    ExecutorService workers;
+
+    /** Runs everything right away on the calling thread, for headless runs where nothing drives the frames */
+    boolean inline;
+
+    public Scheduler() {
+        for (int i = 0; i < Priority.values.length; i++)
+            queues.add(new Array<Job>());
+    }
+
+    public void setInline(boolean inline) {
+        this.inline = inline;
+    }
+
+    public void post(Priority priority, Runnable runnable) {
+        post(priority, new RunnableJob(runnable));
+    }
+
+    public void post(Priority priority, Job job) {
+        if (inline) {
+            while (!job.step())
+                ;
+            return;
+        }
+
+        synchronized (queues) {
+            queues.get(priority.ordinal()).add(job);
+        }
+    }
+
+    /**
+     * Runs work on a worker thread and posts the completion, if any, back to the main thread.
+     */
+    public void submit(final Priority priority, final Runnable work, final Runnable completion) {
+        if (inline) {
+            work.run();
+            if (completion != null) completion.run();
+            return;
+        }
+
+        getWorkers().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    Logger.error("Scheduler", "Background job failed", e);
+                    return;
+                }
+                if (completion != null) post(priority, completion);
+            }
+        });
+    }
+
+    /**
+     * Called once per frame on the main thread. Always makes progress on at least one job.
+     *
+     * @param budget milliseconds this frame may spend on jobs
+     */
+    public void run(double budget) {
+        long end = System.nanoTime() + (long) (budget * 1_000_000);
+        do {
+            Job job = null;
+            int queue = -1;
+            synchronized (queues) {
+                for (int i = 0; i < queues.size; i++) {
+                    if (queues.get(i).size > 0) {
+                        job = queues.get(i).first();
+                        queue = i;
+                        break;
+                    }
+                }
+            }
+            if (job == null) break;
+
+            boolean done;
+            try {
+                done = job.step();
+            } catch (Exception e) {
+                Logger.error("Scheduler", "Job failed", e);
+                done = true;
+            }
+
+            if (done) {
+                synchronized (queues) {
+                    queues.get(queue).removeValue(job, true);
+                }
+            }
+        } while (System.nanoTime() < end);
+    }
+
+    public int getPendingCount() {
+        int count = 0;
+        synchronized (queues) {
+            for (Array<Job> q : queues)
+                count += q.size;
+        }
+        return count;
+    }
+
+    synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(Const.SCHEDULER_WORKERS, new ThreadFactory() {
+                int count;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Scheduler-" + (count++));
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return workers;
+    }
+
+    public synchronized void dispose() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        synchronized (queues) {
+            for (Array<Job> q : queues)
+                q.clear();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.desktop;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Chunk;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.Tile.TileType;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.logistics.Conveyor;
+
+/**
+ * Stress scenario for the conveyor handoff: a layer full of closed conveyor loops,
+ * each running through several chunks, so neighbors on chunk borders keep handing
+ * items to each other from different chunk workers. Nothing leaves a loop,
+ * so the number of items has to stay the same no matter how long it runs.
+ * Every third loop is packed to keep belts blocked, the others carry an item on every fourth conveyor.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class BeltScenario {
+    public static final String NAME = "-belts";
+
+    static final int SIZE = 8 * Const.CHUNK_SIZE;
+    static final int LOOP_LENGTH = 120;
+
+    public static Array<Layer> build() {
+        // bigger than a default layer, there are no fbos to hand to the chunks anyway
+        Layer l = new Layer(0, SIZE, SIZE, TileType.Stone, false, false);
+        l.initChunks();
+
+        int loop = 0;
+        for (int x = 2; x + LOOP_LENGTH < SIZE; x += LOOP_LENGTH + 4) {
+            // a free row between loops, so they don't feed into each other sideways
+            for (int y = 2; y + 1 < SIZE - 2; y += 3) {
+                addLoop(l, x, y, loop % 3 == 0 ? 1 : 4);
+                loop++;
+            }
+        }
+
+        Array<Layer> layers = new Array<>();
+        layers.add(l);
+        return layers;
+    }
+
+    /**
+     * Two rows from x0 to x0 + {@link #LOOP_LENGTH}, the lower one running east, the upper one west.
+     */
+    static void addLoop(Layer l, int x0, int y, int itemEvery) {
+        int x1 = x0 + LOOP_LENGTH;
+        int n = 0;
+        for (int x = x0; x <= x1; x++) {
+            add(l, x, y, x == x1 ? Direction.North : Direction.East, n++ % itemEvery == 0);
+        }
+        for (int x = x1; x >= x0; x--) {
+            add(l, x, y + 1, x == x0 ? Direction.South : Direction.West, n++ % itemEvery == 0);
+        }
+    }
+
+    static void add(Layer l, int x, int y, Direction dir, boolean item) {
+        Conveyor c = new Conveyor(x, y, dir);
+        l.addStructure(c);
+        if (item) c.acceptFromDock(ItemType.Stone, dir, null);
+    }
+
+    public static int countItems(Layer[] layers) {
+        int count = 0;
+        for (Layer l : layers) {
+            for (Chunk c : l.getChunks()) {
+                if (c == null || !c.isInit()) continue;
+                Array<Conveyor> conveyors = c.getConveyors();
+                for (int i = 0; i < conveyors.size; i++) {
+                    count += conveyors.get(i).getItemCount();
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -52,6 +52,13 @@ import de.dakror.quarry.Quarry;
 import net.spookygames.gdx.sfx.desktop.DesktopAudioDurationResolver;
 
 public class DesktopLauncher implements PlatformInterface {
+    /////////////////////
+
+    public static final int VERSION_CODE = 123;
+    public static final String VERSION = "v122";
+
+    /////////////////////
+
     public static void main(String[] arg) {
         new DesktopLauncher(arg);
     }
@@ -90,14 +97,7 @@ public class DesktopLauncher implements PlatformInterface {
         config.vSyncEnabled = true;
         config.audioDeviceSimultaneousSources = 32;
 
-        /////////////////////
-
-        int versionCode = 123;
-        String version = "v122";
-
-        /////////////////////
-
-        this.version = version;
+        this.version = VERSION;
         this.arg = arg;
 
         config.addIcon("icon-16.png", FileType.Internal);
@@ -116,7 +116,7 @@ public class DesktopLauncher implements PlatformInterface {
         }
 
         DesktopAudioDurationResolver.initialize();
-        Quarry game = new Quarry(this, true, versionCode, version, true, false, mode);
+        Quarry game = new Quarry(this, true, VERSION_CODE, VERSION, true, false, mode);
         new LwjglApplication(game, config);
     }
 
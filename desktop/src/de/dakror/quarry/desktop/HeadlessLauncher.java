@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.desktop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.GL20;
+
+import de.dakror.common.Callback;
+import de.dakror.common.libgdx.PlatformInterface;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Chunk;
+import de.dakror.quarry.game.Journal;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.Simulation.Snapshot;
+import de.dakror.quarry.scenes.Game;
+
+/**
+ * Loads a save and runs the simulation without a window, fbos or sounds,
+ * then prints tick timings and optionally writes the result back.
+ * With <code>replay</code> the journal recorded next to the save is played back,
+ * its recorded speeds take precedence and 0 ticks runs until the journal ends.
+ * Instead of a save, <code>-belts</code> runs the {@link BeltScenario} and fails if items get lost or duplicated.
+ * <p>
+ * Usage: <code>HeadlessLauncher &lt;save|-belts&gt; [ticks] [speed] [save|replay]</code>
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class HeadlessLauncher extends ApplicationAdapter implements PlatformInterface {
+    public static void main(String[] arg) {
+        if (arg.length == 0) {
+            System.err.println("Usage: HeadlessLauncher <save|-belts> [ticks] [speed] [save|replay]");
+            System.exit(1);
+        }
+
+        new HeadlessLauncher(arg);
+    }
+
+    String saveName;
+    int ticks;
+    int speed;
+    boolean writeBack;
+    boolean replay;
+    boolean belts;
+    volatile boolean failed;
+
+    Quarry quarry;
+    Game game;
+
+    volatile boolean loaded;
+
+    public HeadlessLauncher(String[] arg) {
+        saveName = arg[0];
+        ticks = arg.length > 1 ? Integer.parseInt(arg[1]) : 60 * Const.SIM_TICK_RATE;
+        speed = arg.length > 2 ? Integer.parseInt(arg[2]) : 1;
+        writeBack = arg.length > 3 && arg[3].equals("save");
+        replay = arg.length > 3 && arg[3].equals("replay");
+        belts = saveName.equals(BeltScenario.NAME);
+
+        // same version as the desktop game, so saves load the way they would there
+        quarry = new Quarry(this, true, DesktopLauncher.VERSION_CODE, DesktopLauncher.VERSION, true, false, null);
+
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = 0;
+        new HeadlessApplication(this, config);
+    }
+
+    @Override
+    public void create() {
+        // textures get uploaded while loading the atlas, there is no context to take them
+        Gdx.gl = Gdx.gl20 = createGLStub();
+
+        quarry.createHeadless();
+
+        game = new Game();
+        game.initHeadless();
+
+        if (belts) {
+            game.loadHeadless(BeltScenario.build());
+            loaded = true;
+            return;
+        }
+
+        System.out.println("Loading " + saveName);
+        game.loadHeadless(saveName, new Callback<Object>() {
+            @Override
+            public void call(Object data) {
+                if (data instanceof Boolean && (Boolean) data) {
+                    loaded = true;
+                } else {
+                    if (data instanceof Exception) ((Exception) data).printStackTrace();
+                    System.err.println("Failed to load " + saveName);
+                    Gdx.app.exit();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void render() {
+        // layers are swapped in by a posted runnable, which runs before this
+        if (!loaded || game.simulation.getSnapshot().layers.length == 0) return;
+        loaded = false;
+
+        if (replay) {
+            try {
+                Journal journal = Journal.load(Journal.file(saveName, false));
+                journal.setStartTick(game.simulation.getTick());
+                game.simulation.setJournal(journal);
+                if (ticks <= 0) ticks = (int) journal.getLastTick() + 1;
+                System.out.println("Replaying " + journal.size() + " commands over " + ticks + " ticks");
+            } catch (Exception e) {
+                e.printStackTrace();
+                Gdx.app.exit();
+                return;
+            }
+        }
+
+        printWorld("Before");
+
+        int items = belts ? BeltScenario.countItems(game.simulation.getSnapshot().layers) : 0;
+        if (belts) System.out.println("  " + items + " items on conveyors");
+
+        long[] times = new long[ticks];
+        long total = 0;
+        for (int i = 0; i < ticks; i++) {
+            long s = System.nanoTime();
+            game.simulation.tick(Const.SIM_TICK_TIME, speed);
+            times[i] = System.nanoTime() - s;
+            total += times[i];
+
+            if (belts && (i % Const.SIM_TICK_RATE == 0 || i == ticks - 1)) {
+                int count = BeltScenario.countItems(game.simulation.getSnapshot().layers);
+                if (count != items) {
+                    System.err.println("Tick " + i + ": " + count + " items on conveyors, expected " + items);
+                    failed = true;
+                    break;
+                }
+            }
+        }
+
+        System.out.format("Ran %d ticks in %.1fms%n", ticks, total / 1_000_000.0);
+        System.out.format("  avg %.3fms/tick%n", total / 1_000_000.0 / Math.max(1, ticks));
+        printSlowest(times, 5);
+
+        printWorld("After");
+        if (belts && !failed) System.out.println("  all " + items + " items still on conveyors");
+
+        if (writeBack) {
+            game.save(game.currentGameName, false, new Callback<Void>() {
+                @Override
+                public void call(Void data) {
+                    System.out.println("Saved " + game.currentGameName);
+                    Gdx.app.exit();
+                }
+            });
+        } else {
+            Gdx.app.exit();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        game.simulation.stop();
+        quarry.threadPool.shutdown();
+
+        if (failed) System.exit(1);
+    }
+
+    static void printSlowest(long[] times, int count) {
+        boolean[] taken = new boolean[times.length];
+        for (int n = 0; n < Math.min(count, times.length); n++) {
+            int max = -1;
+            for (int i = 0; i < times.length; i++) {
+                if (!taken[i] && (max == -1 || times[i] > times[max])) max = i;
+            }
+            taken[max] = true;
+            System.out.format("  tick %d took %.3fms%n", max, times[max] / 1_000_000.0);
+        }
+    }
+
+    void printWorld(String label) {
+        Snapshot s = game.simulation.getSnapshot();
+
+        int structures = 0, awake = 0, chunks = 0;
+        for (Layer l : s.layers) {
+            for (Chunk c : l.getChunks()) {
+                if (c == null || !c.isInit()) continue;
+                chunks++;
+                structures += c.getStructures().size;
+                awake += c.getAwakeCount();
+            }
+        }
+
+        System.out.format("%s: %d layers, %d chunks, %d structures (%d awake), %d power networks%n", label,
+                s.layers.length, chunks, structures, awake, s.networks.length);
+    }
+
+    /**
+     * GL20 that does nothing and returns zero, enough for textures and meshes
+     * to be created without a context as long as nothing is drawn.
+     */
+    static GL20 createGLStub() {
+        return (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        Class<?> type = method.getReturnType();
+                        if (type == boolean.class) return false;
+                        if (type == int.class) return 0;
+                        if (type == float.class) return 0f;
+                        if (type == String.class) return "";
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public Object message(int messageCode, Object payload) {
+        switch (messageCode) {
+            case PlatformInterface.MSG_EXCEPTION: {
+                ((Exception) payload).printStackTrace();
+                break;
+            }
+            case Const.MSG_PADDING:
+                return new int[4];
+            case Const.MSG_DPI:
+                return 1f;
+            case Const.MSG_FILE_PERMISSION:
+                return true;
+        }
+
+        return null;
+    }
+}
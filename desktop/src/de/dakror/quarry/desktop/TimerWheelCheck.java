@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.desktop;
+
+import java.util.Random;
+
+import com.badlogic.gdx.utils.LongArray;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.TimerWheel;
+import de.dakror.quarry.structure.base.Structure;
+
+/**
+ * Checks that the {@link TimerWheel} fires every entry exactly at its tick, across the turns of all levels
+ * and for entries further out than the wheel reaches. Needs no world, entries are recorded by their due tick only.
+ * Exits with 1 on the first mismatch.
+ * <p>
+ * Run with: <code>gradle desktop:checkTimerWheel</code>
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class TimerWheelCheck {
+    static final long TOP_TURN = 1L << (Const.TIMER_WHEEL_BITS * Const.TIMER_WHEEL_LEVELS);
+
+    static class RecordingWheel extends TimerWheel {
+        long now;
+        final LongArray fired = new LongArray();
+
+        RecordingWheel() {
+            super(null);
+        }
+
+        void step(long tick) {
+            while (now < tick) {
+                advance(++now);
+            }
+        }
+
+        @Override
+        protected void fire(Structure<?> s, long due) {
+            if (due != now) fail("fired " + due + " at " + now);
+            fired.add(due);
+        }
+    }
+
+    public static void main(String[] arg) {
+        // right before the top level wraps around, due a few ticks after it
+        RecordingWheel w = new RecordingWheel();
+        w.step(TOP_TURN - 10);
+        w.schedule(null, TOP_TURN + 5);
+        w.step(TOP_TURN + 5);
+        expect(w, TOP_TURN + 5);
+
+        // further out than a full turn of the top level
+        w = new RecordingWheel();
+        w.step(3);
+        w.schedule(null, 3 * TOP_TURN + 7);
+        w.step(3 * TOP_TURN + 7);
+        expect(w, 3 * TOP_TURN + 7);
+
+        // everything in between, scheduled while the wheel keeps turning
+        Random r = new Random(5044591726400517120L);
+        for (int n = 0; n < 20; n++) {
+            w = new RecordingWheel();
+            w.step(r.nextInt((int) (2 * TOP_TURN)));
+
+            LongArray due = new LongArray();
+            for (int i = 0; i < 50; i++) {
+                if (r.nextInt(3) == 0) w.step(w.now + 1 + r.nextInt(5000));
+
+                long d = w.now + 1 + (r.nextBoolean() ? r.nextInt(100) : r.nextInt((int) (2 * TOP_TURN)));
+                w.schedule(null, d);
+                due.add(d);
+            }
+
+            due.sort();
+            w.step(due.peek() + 1);
+            expect(w, due.toArray());
+        }
+
+        System.out.println("TimerWheel ok");
+    }
+
+    static void expect(RecordingWheel w, long... due) {
+        w.fired.sort();
+        if (w.fired.size != due.length) fail("fired " + w.fired.size + " of " + due.length);
+        for (int i = 0; i < due.length; i++) {
+            if (w.fired.get(i) != due[i]) fail("expected " + due[i] + ", fired " + w.fired.get(i));
+        }
+    }
+
+    static void fail(String message) {
+        System.err.println("TimerWheel: " + message);
+        System.exit(1);
+    }
+}